@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * One point in time of a {@link BackupRepository}: the base object and the change segments to apply on top of it,
+ * in order. Each manifest describes the complete chain, so restoring never needs an older manifest.
+ */
+public class BackupManifest {
+    private final String name;
+    private final Instant created;
+    private final int recordCount;
+    private final String base;
+    private final List<String> segments;
+    private final int changesSinceBase;
+
+    public BackupManifest(String name, Instant created, int recordCount, String base, List<String> segments,
+                          int changesSinceBase) {
+        this.name = name;
+        this.created = created;
+        this.recordCount = recordCount;
+        this.base = base;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.changesSinceBase = changesSinceBase;
+    }
+
+    public String getName() {
+        return name;
+    }
+    public Instant getCreated() {
+        return created;
+    }
+    public int getRecordCount() {
+        return recordCount;
+    }
+    public String getBase() {
+        return base;
+    }
+    public List<String> getSegments() {
+        return segments;
+    }
+    public int getChangesSinceBase() {
+        return changesSinceBase;
+    }
+
+    void store(OutputStream out) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("created", created.toString());
+        properties.setProperty("records", Integer.toString(recordCount));
+        properties.setProperty("base", base);
+        properties.setProperty("segments", String.join(" ", segments));
+        properties.setProperty("changes", Integer.toString(changesSinceBase));
+        properties.store(out, "Music database backup");
+    }
+
+    static BackupManifest load(String name, InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        try {
+            String segments = properties.getProperty("segments", "").trim();
+            return new BackupManifest(name,
+                    Instant.parse(properties.getProperty("created")),
+                    Integer.parseInt(properties.getProperty("records")),
+                    Objects.requireNonNull(properties.getProperty("base")),
+                    segments.isEmpty() ? List.of() : Arrays.asList(segments.split(" ")),
+                    Integer.parseInt(properties.getProperty("changes", "0")));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid backup manifest: " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return created + " (" + recordCount + " records, " + (segments.isEmpty() ? "full" : segments.size() + " segments") + ")";
+    }
+}
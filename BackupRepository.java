@@ -0,0 +1,345 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Directory of incremental backups. {@code objects/} holds gzip-compressed objects named by the SHA-256 of their
+ * content, so identical content is stored once; {@code manifests/} holds one {@link BackupManifest} per backup.
+ * Records and change segments use the journal's entry encoding; a base starts with a header giving the
+ * {@link #INDEX_VERSION} of the indexes stored after its records. {@code fingerprints} caches a hash per record of
+ * the latest backup so the next one finds the changes without reading the chain; it is rebuilt when stale.
+ */
+public class BackupRepository {
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final int FINGERPRINT_MAGIC = 0x4D444246;
+    /** Starts a base; negative, so it cannot be mistaken for the first record block of a base written without it. */
+    private static final int BASE_MAGIC = 0x8D444242;
+    /**
+     * Layout of the indexes stored in a base; bases without a header are version 1. Version 2: text index
+     * tokens keep the breve of Cyrillic "й".
+     */
+    static final int INDEX_VERSION = 2;
+    private static final int RECORDS_PER_BLOCK = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @FunctionalInterface
+    interface ObjectWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ObjectReader {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Record fingerprints in ascending id order.
+     */
+    record Fingerprints(int[] ids, long[] values) {
+    }
+
+    private final Path objects;
+    private final Path manifests;
+    private final Path fingerprintFile;
+
+    public BackupRepository(Path directory) {
+        this.objects = directory.resolve("objects");
+        this.manifests = directory.resolve("manifests");
+        this.fingerprintFile = directory.resolve("fingerprints");
+    }
+
+    /**
+     * All backups, oldest first.
+     */
+    public List<BackupManifest> list() throws IOException {
+        List<BackupManifest> result = new ArrayList<>();
+        if (!Files.isDirectory(manifests)) {
+            return result;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(manifests, "*" + MANIFEST_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try (InputStream in = Files.newInputStream(file)) {
+                    result.add(BackupManifest.load(name.substring(0, name.length() - MANIFEST_SUFFIX.length()), in));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(BackupManifest::getCreated).thenComparing(BackupManifest::getName));
+        return result;
+    }
+
+    /**
+     * The latest backup taken at or before {@code pointInTime}, the latest overall for {@code null},
+     * or {@code null} if there is none.
+     */
+    public BackupManifest find(Instant pointInTime) throws IOException {
+        BackupManifest found = null;
+        for (BackupManifest manifest : list()) {
+            if (pointInTime == null || !manifest.getCreated().isAfter(pointInTime)) {
+                found = manifest;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Writes an object and returns its hash; if the same content is already stored the new copy is dropped.
+     */
+    String store(ObjectWriter writer) throws IOException {
+        Files.createDirectories(objects);
+        Path temp = Files.createTempFile(objects, "object", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                GZIPOutputStream compressed = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(compressed, digest), BUFFER_SIZE));
+                writer.write(out);
+                out.flush();
+                compressed.finish();
+                channel.force(true);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = objects.resolve(hash);
+            if (!Files.exists(target)) {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Parses an object while hashing it, in one pass over the file, and fails if the hash does not match once the
+     * rest is read; the caller must discard what {@code reader} loaded when this throws.
+     */
+    void read(String hash, ObjectReader reader) throws IOException {
+        Path file = objects.resolve(hash);
+        if (!Files.exists(file)) {
+            throw new FileNotFoundException("Backup object missing: " + hash);
+        }
+        MessageDigest digest = sha256();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new DigestInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), digest), BUFFER_SIZE))) {
+            try {
+                reader.read(in);
+            } catch (IOException | RuntimeException e) {
+                // Content that does not match its hash is reported as damage, not as whatever the parser tripped over.
+                if (!hasHash(in, digest, hash)) {
+                    throw corrupted(hash, e);
+                }
+                throw e;
+            }
+            if (!hasHash(in, digest, hash)) {
+                throw corrupted(hash, null);
+            }
+        } catch (ZipException | EOFException e) {
+            throw corrupted(hash, e);
+        }
+    }
+
+    /**
+     * Reads the rest of {@code in} into {@code digest} and compares the result with {@code hash}.
+     */
+    private static boolean hasHash(InputStream in, MessageDigest digest, String hash) {
+        try {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            return false;
+        }
+        return hash.equals(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static IOException corrupted(String hash, Exception cause) {
+        return new IOException("Backup object is corrupted: " + hash, cause);
+    }
+
+    BackupManifest addManifest(Instant created, int recordCount, String base, List<String> segments,
+                               int changesSinceBase) throws IOException {
+        Files.createDirectories(manifests);
+        long stamp = created.toEpochMilli();
+        while (Files.exists(manifests.resolve(stamp + MANIFEST_SUFFIX))) {
+            stamp++;
+        }
+        BackupManifest manifest = new BackupManifest(Long.toString(stamp), created, recordCount, base, segments, changesSinceBase);
+        Path temp = manifests.resolve(stamp + MANIFEST_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            manifest.store(out);
+        }
+        Files.move(temp, manifests.resolve(stamp + MANIFEST_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        return manifest;
+    }
+
+    /**
+     * Fingerprints of the state saved by {@code manifest}, from the cache or else by reading its chain.
+     */
+    Fingerprints loadFingerprints(BackupManifest manifest) throws IOException {
+        if (Files.exists(fingerprintFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fingerprintFile), BUFFER_SIZE))) {
+                if (in.readInt() == FINGERPRINT_MAGIC && in.readUTF().equals(manifest.getName())) {
+                    int count = in.readInt();
+                    int[] ids = new int[count];
+                    long[] values = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        ids[i] = in.readInt();
+                        values[i] = in.readLong();
+                    }
+                    return new Fingerprints(ids, values);
+                }
+            } catch (EOFException e) {
+                // truncated cache, rebuilt below
+            }
+        }
+        Map<Integer, Long> values = new HashMap<>();
+        Consumer<MusicDatabaseJournal.Entry> apply = entry -> {
+            if (entry.getOp() == MusicDatabaseJournal.Op.PUT) {
+                values.put(entry.getId(), fingerprint(entry.getRecord()));
+            } else {
+                values.remove(entry.getId());
+            }
+        };
+        read(manifest.getBase(), in -> {
+            readBaseHeader(in);
+            readRecords(in, apply);
+        });
+        for (String segment : manifest.getSegments()) {
+            read(segment, in -> MusicDatabaseJournal.readEntries(in, apply));
+        }
+        int[] ids = values.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        long[] fingerprints = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            fingerprints[i] = values.get(ids[i]);
+        }
+        return new Fingerprints(ids, fingerprints);
+    }
+
+    void saveFingerprints(BackupManifest manifest, Fingerprints fingerprints) throws IOException {
+        Path temp = fingerprintFile.resolveSibling("fingerprints.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(FINGERPRINT_MAGIC);
+            out.writeUTF(manifest.getName());
+            out.writeInt(fingerprints.ids().length);
+            for (int i = 0; i < fingerprints.ids().length; i++) {
+                out.writeInt(fingerprints.ids()[i]);
+                out.writeLong(fingerprints.values()[i]);
+            }
+        }
+        Files.move(temp, fingerprintFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void writeBaseHeader(DataOutputStream out) throws IOException {
+        out.writeInt(BASE_MAGIC);
+        out.writeInt(INDEX_VERSION);
+    }
+
+    /**
+     * Reads the header of a base and returns whether its stored indexes have the current layout; if not, only
+     * its records can be used. A base written without a header is left at its first record block.
+     */
+    static boolean readBaseHeader(DataInputStream in) throws IOException {
+        in.mark(Integer.BYTES);
+        if (in.readInt() != BASE_MAGIC) {
+            in.reset();
+            return false;
+        }
+        return in.readInt() == INDEX_VERSION;
+    }
+
+    /**
+     * Writes records as blocks of PUT entries, ended by an empty block.
+     */
+    static void writeRecords(DataOutputStream out, Collection<MusicRecord> records) throws IOException {
+        List<MusicDatabaseJournal.Entry> block = new ArrayList<>(RECORDS_PER_BLOCK);
+        for (MusicRecord record : records) {
+            block.add(MusicDatabaseJournal.Entry.put(record));
+            if (block.size() == RECORDS_PER_BLOCK) {
+                MusicDatabaseJournal.writeEntries(out, block);
+                block.clear();
+            }
+        }
+        if (!block.isEmpty()) {
+            MusicDatabaseJournal.writeEntries(out, block);
+            block.clear();
+        }
+        MusicDatabaseJournal.writeEntries(out, block);
+    }
+
+    static void readRecords(DataInputStream in, Consumer<MusicDatabaseJournal.Entry> consumer) throws IOException {
+        while (MusicDatabaseJournal.readEntries(in, consumer) > 0) {
+            // next block
+        }
+    }
+
+    /**
+     * The entries that turn the state {@code before} into {@code after}; {@code records} looks up records of {@code after}.
+     */
+    static List<MusicDatabaseJournal.Entry> changes(Fingerprints before, Fingerprints after, IntFunction<MusicRecord> records) {
+        List<MusicDatabaseJournal.Entry> changes = new ArrayList<>();
+        int[] oldIds = before.ids();
+        int[] newIds = after.ids();
+        int i = 0;
+        int j = 0;
+        while (i < oldIds.length || j < newIds.length) {
+            if (j == newIds.length || (i < oldIds.length && oldIds[i] < newIds[j])) {
+                changes.add(MusicDatabaseJournal.Entry.delete(oldIds[i++]));
+            } else if (i == oldIds.length || newIds[j] < oldIds[i]) {
+                changes.add(MusicDatabaseJournal.Entry.put(records.apply(newIds[j++])));
+            } else {
+                if (before.values()[i] != after.values()[j]) {
+                    changes.add(MusicDatabaseJournal.Entry.put(records.apply(newIds[j])));
+                }
+                i++;
+                j++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * 64-bit hash of every field; two records with the same fingerprint are treated as unchanged.
+     */
+    static long fingerprint(MusicRecord record) {
+        long hash = mix(record.getId() * 0x9E3779B97F4A7C15L + record.getDuration());
+        hash = mix(hash * 31 + hash(record.getTitle()));
+        hash = mix(hash * 31 + hash(record.getArtist()));
+        hash = mix(hash * 31 + hash(record.getAlbum()));
+        return mix(hash * 31 + hash(record.getGenre()));
+    }
+
+    private static long hash(String value) {
+        if (value == null) {
+            return 0x5BD1E995L;
+        }
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
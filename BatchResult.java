@@ -0,0 +1,34 @@
+public class BatchResult {
+    private final int added;
+    private final int deleted;
+    private final long elapsedNanos;
+
+    public BatchResult(int added, int deleted, long elapsedNanos) {
+        this.added = added;
+        this.deleted = deleted;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+    public int getDeleted() {
+        return deleted;
+    }
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (added + deleted) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d added, %d deleted in %.1f ms (%.0f records/s)",
+                added, deleted, elapsedNanos / 1_000_000.0, getRecordsPerSecond());
+    }
+}
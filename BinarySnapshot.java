@@ -0,0 +1,176 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of a {@code .mdb} file written by {@link BinarySnapshotFormat}. The file is read into memory
+ * and closed at once, so it can be replaced while the view is in use; a memory mapping would stay open until
+ * garbage collected and keep Windows from moving a new snapshot over the file. The layout is checked on open,
+ * so a truncated or corrupt file fails with an {@link IOException}. {@link #get(int)} decodes one record;
+ * pooled artist/album/genre strings are decoded once and shared. {@link BinarySnapshotFormat#read} still
+ * decodes every record, because the manager indexes them all on open.
+ */
+public class BinarySnapshot {
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int[] columnOffsets = new int[BinarySnapshotFormat.COLUMN_COUNT];
+    private final StringTable pool;
+    private final StringTable titles;
+    private final String[] decodedPool;
+
+    private BinarySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() == 0) {
+            this.count = 0;
+            this.pool = null;
+            this.titles = null;
+            this.decodedPool = new String[0];
+            return;
+        }
+        if (buffer.limit() < BinarySnapshotFormat.HEADER_BYTES || buffer.getInt(0) != BinarySnapshotFormat.MAGIC) {
+            throw new IOException("Not a binary music database file!");
+        }
+        if (buffer.getInt(4) != BinarySnapshotFormat.VERSION) {
+            throw new IOException("Unsupported binary music database version: " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        long columnsEnd = BinarySnapshotFormat.HEADER_BYTES + (long) BinarySnapshotFormat.COLUMN_COUNT * count * Integer.BYTES;
+        if (count < 0 || columnsEnd > buffer.limit()) {
+            throw corrupt("record count " + count);
+        }
+        int offset = BinarySnapshotFormat.HEADER_BYTES;
+        for (int i = 0; i < columnOffsets.length; i++) {
+            columnOffsets[i] = offset;
+            offset += count * Integer.BYTES;
+        }
+        this.pool = new StringTable(buffer, offset);
+        this.titles = new StringTable(buffer, pool.end());
+        this.decodedPool = new String[pool.size];
+        checkReferences(BinarySnapshotFormat.TITLE_COLUMN, titles.size);
+        checkReferences(BinarySnapshotFormat.ARTIST_COLUMN, pool.size);
+        checkReferences(BinarySnapshotFormat.ALBUM_COLUMN, pool.size);
+        checkReferences(BinarySnapshotFormat.GENRE_COLUMN, pool.size);
+    }
+
+    public static BinarySnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Binary music database file is too large: " + size + " bytes!");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Binary music database file was truncated while reading!");
+                }
+            }
+            return new BinarySnapshot(buffer.flip());
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getId(int index) {
+        return column(BinarySnapshotFormat.ID_COLUMN, index);
+    }
+
+    public MusicRecord get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record index " + index + " out of range!");
+        }
+        int titleRef = column(BinarySnapshotFormat.TITLE_COLUMN, index);
+        return new MusicRecord(
+                column(BinarySnapshotFormat.ID_COLUMN, index),
+                titleRef < 0 ? null : titles.decode(titleRef),
+                pooled(column(BinarySnapshotFormat.ARTIST_COLUMN, index)),
+                pooled(column(BinarySnapshotFormat.ALBUM_COLUMN, index)),
+                pooled(column(BinarySnapshotFormat.GENRE_COLUMN, index)),
+                column(BinarySnapshotFormat.DURATION_COLUMN, index));
+    }
+
+    public void forEach(Consumer<MusicRecord> consumer) {
+        for (int i = 0; i < count; i++) {
+            consumer.accept(get(i));
+        }
+    }
+
+    private int column(int column, int index) {
+        return buffer.getInt(columnOffsets[column] + index * Integer.BYTES);
+    }
+
+    private void checkReferences(int column, int tableSize) throws IOException {
+        for (int i = 0; i < count; i++) {
+            int ref = column(column, i);
+            if (ref < -1 || ref >= tableSize) {
+                throw corrupt("string reference " + ref + " of record " + i);
+            }
+        }
+    }
+
+    private static IOException corrupt(String what) {
+        return new IOException("Corrupt binary music database file: bad " + what + "!");
+    }
+
+    private String pooled(int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        String value = decodedPool[ref];
+        if (value == null) {
+            value = pool.decode(ref);
+            decodedPool[ref] = value;
+        }
+        return value;
+    }
+
+    private static final class StringTable {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int offsetsStart;
+        private final int bytesStart;
+
+        /**
+         * Checks that the offsets start at zero, never decrease and end inside the buffer, so
+         * {@link #decode(int)} cannot read out of bounds.
+         */
+        StringTable(ByteBuffer buffer, int start) throws IOException {
+            this.buffer = buffer;
+            if ((long) start + Integer.BYTES > buffer.limit()) {
+                throw corrupt("string table position " + start);
+            }
+            this.size = buffer.getInt(start);
+            this.offsetsStart = start + Integer.BYTES;
+            if (size < 0 || offsetsStart + (size + 1L) * Integer.BYTES > buffer.limit()) {
+                throw corrupt("string table size " + size);
+            }
+            this.bytesStart = offsetsStart + (size + 1) * Integer.BYTES;
+            int previous = 0;
+            for (int i = 0; i <= size; i++) {
+                int offset = buffer.getInt(offsetsStart + i * Integer.BYTES);
+                if (offset < previous || (i == 0 && offset != 0) || (long) bytesStart + offset > buffer.limit()) {
+                    throw corrupt("string offset " + offset);
+                }
+                previous = offset;
+            }
+        }
+
+        int end() {
+            return bytesStart + buffer.getInt(offsetsStart + size * Integer.BYTES);
+        }
+
+        String decode(int ref) {
+            int from = buffer.getInt(offsetsStart + ref * Integer.BYTES);
+            int to = buffer.getInt(offsetsStart + (ref + 1) * Integer.BYTES);
+            byte[] bytes = new byte[to - from];
+            buffer.get(bytesStart + from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Columnar binary format: a fixed header, six int columns (id, duration and references into the
+ * string tables), a deduplicated string pool for artist/album/genre and a table of titles.
+ * A reference of {@code -1} encodes {@code null}.
+ */
+public class BinarySnapshotFormat implements SnapshotFormat {
+    public static final String EXTENSION = ".mdb";
+
+    static final int MAGIC = 0x4D444231;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int COLUMN_COUNT = 6;
+    static final int ID_COLUMN = 0;
+    static final int DURATION_COLUMN = 1;
+    static final int TITLE_COLUMN = 2;
+    static final int ARTIST_COLUMN = 3;
+    static final int ALBUM_COLUMN = 4;
+    static final int GENRE_COLUMN = 5;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public void read(Path file, Consumer<MusicRecord> consumer) throws IOException {
+        BinarySnapshot.open(file).forEach(consumer);
+    }
+
+    @Override
+    public void write(Path file, Collection<MusicRecord> records) throws IOException {
+        Columns columns = new Columns(records.size());
+        for (MusicRecord record : records) {
+            columns.add(record);
+        }
+        columns.writeTo(file);
+    }
+
+    /**
+     * Encodes records one at a time into the columns and string tables, so a caller that receives them as a
+     * stream keeps only the encoded form, not the records.
+     */
+    static final class Columns {
+        private int[][] columns;
+        private int count;
+        private final StringTableBuilder pool = new StringTableBuilder();
+        private final StringTableBuilder titles = new StringTableBuilder();
+        private final Map<String, Integer> poolRefs = new HashMap<>();
+
+        Columns(int expectedCount) {
+            columns = new int[COLUMN_COUNT][Math.max(16, expectedCount)];
+        }
+
+        void add(MusicRecord record) {
+            if (count == columns[0].length) {
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], count + (count >> 1));
+                }
+            }
+            columns[ID_COLUMN][count] = record.getId();
+            columns[DURATION_COLUMN][count] = record.getDuration();
+            columns[TITLE_COLUMN][count] = record.getTitle() == null ? -1 : titles.add(record.getTitle());
+            columns[ARTIST_COLUMN][count] = poolRef(record.getArtist());
+            columns[ALBUM_COLUMN][count] = poolRef(record.getAlbum());
+            columns[GENRE_COLUMN][count] = poolRef(record.getGenre());
+            count++;
+        }
+
+        void writeTo(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(0);
+                for (int[] column : columns) {
+                    for (int row = 0; row < count; row++) {
+                        out.writeInt(column[row]);
+                    }
+                }
+                pool.writeTo(out);
+                titles.writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+        }
+
+        private int poolRef(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer ref = poolRefs.get(value);
+            if (ref == null) {
+                ref = pool.add(value);
+                poolRefs.put(value, ref);
+            }
+            return ref;
+        }
+    }
+
+    private static final class StringTableBuilder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int[] offsets = new int[16];
+        private int size;
+
+        int add(String value) {
+            if (size + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            bytes.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            offsets[++size] = bytes.size();
+            return size - 1;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i <= size; i++) {
+                out.writeInt(offsets[i]);
+            }
+            bytes.writeTo(out);
+        }
+    }
+}
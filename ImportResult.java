@@ -0,0 +1,51 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link MusicDatabaseManager#importRecords(String, ProgressListener)}. Only the first
+ * {@value MusicRecordImporter#MAX_ERRORS} error messages are kept; the counts cover every row.
+ */
+public class ImportResult {
+    private final int imported;
+    private final int duplicates;
+    private final int invalid;
+    private final List<String> errors;
+    private final long elapsedNanos;
+
+    public ImportResult(int imported, int duplicates, int invalid, List<String> errors, long elapsedNanos) {
+        this.imported = imported;
+        this.duplicates = duplicates;
+        this.invalid = invalid;
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+    public int getDuplicates() {
+        return duplicates;
+    }
+    public int getInvalid() {
+        return invalid;
+    }
+    public List<String> getErrors() {
+        return errors;
+    }
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRecordsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (imported + duplicates + invalid) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d imported, %d duplicates, %d invalid in %.1f ms (%.0f records/s)",
+                imported, duplicates, invalid, elapsedNanos / 1_000_000.0, getRecordsPerSecond());
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Insertion-ordered map from primitive {@code int} keys to values, without boxing or per-entry objects.
+ * Entries live in dense parallel arrays; an open-addressing table maps keys to their dense slot.
+ * Removed entries leave a hole that is squeezed out on the next resize, so iteration order matches
+ * {@link java.util.LinkedHashMap}.
+ */
+public class IntObjectMap<V> {
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int[] table;
+    private int used;
+    private int size;
+    private int deletedSlots;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Math.max(8, expectedSize);
+        keys = new int[capacity];
+        values = new Object[capacity];
+        table = new int[tableSizeFor(capacity)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = findSlot(key);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        if (used == keys.length || (used + deletedSlots + 1) * 2 > table.length) {
+            resize();
+        }
+        keys[used] = key;
+        values[used] = value;
+        insertIntoTable(key, used);
+        used++;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (table[i] != DELETED && keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = null;
+                table[i] = DELETED;
+                deletedSlots++;
+                size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0, used, null);
+        Arrays.fill(table, EMPTY);
+        used = 0;
+        size = 0;
+        deletedSlots = 0;
+    }
+
+    /**
+     * The keys in insertion order.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Live view of the values in insertion order.
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    private int next = advance(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < used;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public V next() {
+                        if (next >= used) {
+                            throw new NoSuchElementException();
+                        }
+                        V value = (V) values[next];
+                        next = advance(next + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int advance(int from) {
+        int i = from;
+        while (i < used && values[i] == null) {
+            i++;
+        }
+        return i;
+    }
+
+    private int findSlot(int key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] != DELETED && keys[table[i] - 1] == key) {
+                return table[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIntoTable(int key, int slot) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (table[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    private void resize() {
+        int capacity = Math.max(8, size * 2);
+        int[] newKeys = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        int live = 0;
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                newKeys[live] = keys[i];
+                newValues[live] = values[i];
+                live++;
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        table = new int[tableSizeFor(capacity)];
+        used = live;
+        deletedSlots = 0;
+        for (int i = 0; i < live; i++) {
+            insertIntoTable(keys[i], i);
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 4 - 1);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sorted set of record ids used as a postings list by the indexes. Costs four bytes per id instead of a boxed
+ * {@code Integer} or record reference plus list overhead. Up to {@link #BLOCK_SIZE} ids are kept in one plain
+ * {@code int[]}; larger postings, such as those of a genre, are split into sorted blocks of at most that many ids,
+ * so adding or removing an id shifts at most one block plus the block table instead of the whole list.
+ */
+public class IntPostings {
+    static final int BLOCK_SIZE = 1024;
+
+    private int[] ids = new int[2];
+    private int size;
+    /** Set once the postings outgrow one block; {@link #ids} is then unused. */
+    private Blocks blocks;
+
+    /**
+     * The ids of block {@code b} are {@code ids[b][0..sizes[b])}, and {@code starts[b]} is the position of its
+     * first id in the whole postings. Every block is non-empty and holds only ids above those of earlier blocks.
+     */
+    private static final class Blocks {
+        int[][] ids = new int[4][];
+        int[] sizes = new int[4];
+        int[] starts = new int[4];
+        int count;
+
+        /**
+         * The block that holds {@code id} or should receive it: the last one whose first id is not above it.
+         */
+        int blockFor(int id) {
+            int low = 1;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle][0] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        int blockAt(int index) {
+            int low = 1;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low - 1;
+        }
+
+        void insert(int b, int[] block, int blockSize) {
+            if (count == ids.length) {
+                int capacity = count + (count >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+            }
+            System.arraycopy(ids, b, ids, b + 1, count - b);
+            System.arraycopy(sizes, b, sizes, b + 1, count - b);
+            System.arraycopy(starts, b, starts, b + 1, count - b);
+            ids[b] = block;
+            sizes[b] = blockSize;
+            starts[b] = b == 0 ? 0 : starts[b - 1] + sizes[b - 1];
+            count++;
+        }
+
+        void delete(int b) {
+            System.arraycopy(ids, b + 1, ids, b, count - b - 1);
+            System.arraycopy(sizes, b + 1, sizes, b, count - b - 1);
+            System.arraycopy(starts, b + 1, starts, b, count - b - 1);
+            count--;
+            ids[count] = null;
+        }
+
+        void shiftStarts(int from, int delta) {
+            for (int b = from; b < count; b++) {
+                starts[b] += delta;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        if (blocks == null) {
+            return ids[index];
+        }
+        int b = blocks.blockAt(index);
+        return blocks.ids[b][index - blocks.starts[b]];
+    }
+
+    public boolean contains(int id) {
+        if (blocks == null) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+        int b = blocks.blockFor(id);
+        return Arrays.binarySearch(blocks.ids[b], 0, blocks.sizes[b], id) >= 0;
+    }
+
+    /**
+     * Returns {@code false} if the id was already present.
+     */
+    public boolean add(int id) {
+        if (blocks != null) {
+            return addToBlock(id);
+        }
+        int position;
+        if (size == 0 || ids[size - 1] < id) {
+            position = size;
+        } else {
+            position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+        }
+        if (size == BLOCK_SIZE) {
+            blocks = new Blocks();
+            blocks.insert(0, ids, size);
+            ids = null;
+            return addToBlock(id);
+        }
+        ids = insert(ids, size, position, id);
+        size++;
+        return true;
+    }
+
+    public boolean remove(int id) {
+        if (blocks != null) {
+            return removeFromBlock(id);
+        }
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+        if (size > 0 && size < ids.length >> 2) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the ids in ascending order into {@code target} starting at {@code offset}.
+     */
+    public void copyTo(int[] target, int offset) {
+        if (blocks == null) {
+            System.arraycopy(ids, 0, target, offset, size);
+            return;
+        }
+        for (int b = 0; b < blocks.count; b++) {
+            System.arraycopy(blocks.ids[b], 0, target, offset + blocks.starts[b], blocks.sizes[b]);
+        }
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        copyTo(result, 0);
+        return result;
+    }
+
+    /**
+     * The number of blocks the ids are split into; {@code 1} while they fit in one array.
+     */
+    int blockCount() {
+        return blocks == null ? 1 : blocks.count;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        if (blocks == null) {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(ids[i]);
+            }
+            return;
+        }
+        for (int b = 0; b < blocks.count; b++) {
+            for (int i = 0; i < blocks.sizes[b]; i++) {
+                out.writeInt(blocks.ids[b][i]);
+            }
+        }
+    }
+
+    /**
+     * Reads postings written by {@link #writeTo(DataOutputStream)}; the ids are already sorted, so large
+     * postings are read straight into full blocks.
+     */
+    static IntPostings readFrom(DataInputStream in) throws IOException {
+        IntPostings postings = new IntPostings();
+        int size = in.readInt();
+        if (size <= BLOCK_SIZE) {
+            postings.ids = new int[Math.max(2, size)];
+            for (int i = 0; i < size; i++) {
+                postings.ids[i] = in.readInt();
+            }
+        } else {
+            postings.ids = null;
+            postings.blocks = new Blocks();
+            for (int read = 0; read < size; read += BLOCK_SIZE) {
+                int[] block = new int[Math.min(BLOCK_SIZE, size - read)];
+                for (int i = 0; i < block.length; i++) {
+                    block[i] = in.readInt();
+                }
+                postings.blocks.insert(postings.blocks.count, block, block.length);
+            }
+        }
+        postings.size = size;
+        return postings;
+    }
+
+    private boolean addToBlock(int id) {
+        int b = blocks.blockFor(id);
+        int[] block = blocks.ids[b];
+        int blockSize = blocks.sizes[b];
+        int position = Arrays.binarySearch(block, 0, blockSize, id);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (blockSize == BLOCK_SIZE) {
+            if (position == BLOCK_SIZE && b == blocks.count - 1) {
+                // Appending past the last full block starts a new one, so ids added in order fill whole blocks.
+                blocks.insert(b + 1, new int[]{id, 0}, 1);
+                size++;
+                return true;
+            }
+            int half = BLOCK_SIZE / 2;
+            blocks.sizes[b] = half;
+            blocks.insert(b + 1, Arrays.copyOfRange(block, half, BLOCK_SIZE), BLOCK_SIZE - half);
+            if (position > half) {
+                b++;
+                position -= half;
+            }
+            blockSize = blocks.sizes[b];
+        }
+        blocks.ids[b] = insert(blocks.ids[b], blockSize, position, id);
+        blocks.sizes[b]++;
+        blocks.shiftStarts(b + 1, 1);
+        size++;
+        return true;
+    }
+
+    private boolean removeFromBlock(int id) {
+        int b = blocks.blockFor(id);
+        int[] block = blocks.ids[b];
+        int blockSize = blocks.sizes[b];
+        int position = Arrays.binarySearch(block, 0, blockSize, id);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(block, position + 1, block, position, blockSize - position - 1);
+        blocks.sizes[b]--;
+        blocks.shiftStarts(b + 1, -1);
+        size--;
+        if (blocks.sizes[b] == 0) {
+            blocks.delete(b);
+        } else if (b + 1 < blocks.count && blocks.sizes[b] + blocks.sizes[b + 1] <= BLOCK_SIZE / 2) {
+            mergeWithNext(b);
+        } else if (b > 0 && blocks.sizes[b - 1] + blocks.sizes[b] <= BLOCK_SIZE / 2) {
+            mergeWithNext(b - 1);
+        }
+        if (blocks.count == 1) {
+            ids = Arrays.copyOf(blocks.ids[0], Math.max(2, blocks.sizes[0]));
+            blocks = null;
+        }
+        return true;
+    }
+
+    private void mergeWithNext(int b) {
+        int[] merged = Arrays.copyOf(blocks.ids[b], BLOCK_SIZE / 2);
+        System.arraycopy(blocks.ids[b + 1], 0, merged, blocks.sizes[b], blocks.sizes[b + 1]);
+        blocks.ids[b] = merged;
+        blocks.sizes[b] += blocks.sizes[b + 1];
+        blocks.delete(b + 1);
+    }
+
+    /**
+     * Inserts {@code id} at {@code position} of the first {@code size} elements of {@code array}, growing it
+     * if it is full.
+     */
+    private static int[] insert(int[] array, int size, int position, int id) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, Math.min(BLOCK_SIZE, size + (size >> 1) + 1));
+        }
+        System.arraycopy(array, position, array, position + 1, size - position);
+        array[position] = id;
+        return array;
+    }
+}
@@ -0,0 +1,106 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes the JSON array of {@link MusicRecord}s one record at a time, so neither side
+ * ever holds the whole document in memory.
+ */
+public class JsonSnapshotFormat implements SnapshotFormat {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public void read(Path file, Consumer<MusicRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             JsonReader reader = new JsonReader(new BufferedReader(
+                     Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE))) {
+            JsonToken first;
+            try {
+                first = reader.peek();
+            } catch (EOFException e) {
+                return;
+            }
+            if (first == JsonToken.NULL) {
+                return;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumer.accept(readRecord(reader));
+            }
+            reader.endArray();
+        }
+    }
+
+    /**
+     * Writes the records and forces them to disk before returning.
+     */
+    @Override
+    public void write(Path file, Collection<MusicRecord> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE));
+            writer.beginArray();
+            for (MusicRecord record : records) {
+                writeRecord(writer, record);
+            }
+            writer.endArray();
+            writer.flush();
+            channel.force(true);
+        }
+    }
+
+    private static MusicRecord readRecord(JsonReader reader) throws IOException {
+        int id = 0;
+        String title = null;
+        String artist = null;
+        String album = null;
+        String genre = null;
+        int duration = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id" -> id = reader.nextInt();
+                case "title" -> title = reader.nextString();
+                case "artist" -> artist = reader.nextString();
+                case "album" -> album = reader.nextString();
+                case "genre" -> genre = reader.nextString();
+                case "duration" -> duration = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new MusicRecord(id, title, artist, album, genre, duration);
+    }
+
+    private static void writeRecord(JsonWriter writer, MusicRecord record) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(record.getId());
+        writeString(writer, "title", record.getTitle());
+        writeString(writer, "artist", record.getArtist());
+        writeString(writer, "album", record.getAlbum());
+        writeString(writer, "genre", record.getGenre());
+        writer.name("duration").value(record.getDuration());
+        writer.endObject();
+    }
+
+    private static void writeString(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+}
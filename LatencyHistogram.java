@@ -0,0 +1,138 @@
+import javax.management.ConstructorParameters;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with log-linear buckets in the style of HdrHistogram: values below 128 ns are
+ * exact, larger ones fall into one of 64 buckets per power of two, so every percentile is within 1.6% of the
+ * recorded value. Recording is lock-free and allocation-free.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    /** Up to 2^40 ns (about 18 minutes); longer values are counted in the last bucket. */
+    private static final int MAX_SHIFT = 40 - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 1) * HALF_SUB_BUCKETS + HALF_SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Count, mean and percentiles of the values recorded so far, in nanoseconds.
+     */
+    public Summary summary() {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        long maxValue = max.get();
+        return new Summary(count, count == 0 ? 0 : total.sum() / count,
+                percentile(snapshot, count, 50, maxValue), percentile(snapshot, count, 90, maxValue),
+                percentile(snapshot, count, 99, maxValue), percentile(snapshot, count, 99.9, maxValue), maxValue);
+    }
+
+    private static long percentile(long[] snapshot, long count, double percentile, long maxValue) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Math.min(63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1), MAX_SHIFT);
+        long subBucket = Math.min(value >>> shift, SUB_BUCKETS - 1);
+        return shift * HALF_SUB_BUCKETS + (int) subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Point-in-time view of a histogram; also the JMX representation of a latency attribute.
+     */
+    public static class Summary {
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        @ConstructorParameters({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+        public Summary(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+        public long getMean() {
+            return mean;
+        }
+        public long getP50() {
+            return p50;
+        }
+        public long getP90() {
+            return p90;
+        }
+        public long getP99() {
+            return p99;
+        }
+        public long getP999() {
+            return p999;
+        }
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return count + " calls, mean " + mean + " ns, p50 " + p50 + " ns, p99 " + p99 + " ns, max " + max + " ns";
+        }
+    }
+}
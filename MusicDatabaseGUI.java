@@ -1,24 +1,44 @@
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
+import javax.management.JMException;
 import javax.swing.*;
-import javax.swing.event.TableModelEvent;
-import javax.swing.event.TableModelListener;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.io.FileOutputStream;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class MusicDatabaseGUI extends JFrame {
+    private static final int PAGE_SIZE = 100_000;
+
     private final MusicDatabaseManager dbManager;
+    private final MusicDatabaseService service;
     private JTable table;
-    private DefaultTableModel tableModel;
+    private MusicRecordTableModel tableModel;
+    private JLabel pageLabel;
+    private JProgressBar progressBar;
+    private JButton btnCancel;
+    private CompletableFuture<?> runningTask;
 
     public MusicDatabaseGUI() {
-        this.dbManager = new MusicDatabaseManager("music_database.json");
+        this.dbManager = new MusicDatabaseManager("music_database.json", true);
+        this.service = new MusicDatabaseService(dbManager);
+        try {
+            dbManager.getMetrics().register();
+        } catch (JMException e) {
+            // Metrics are optional; the database works the same without them.
+        }
         initUI();
         loadTable();
     }
@@ -26,13 +46,20 @@ public class MusicDatabaseGUI extends JFrame {
     private void initUI() {
         setTitle("Music Database");
         setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setLocationRelativeTo(null);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeDatabase();
+            }
+        });
 
         JPanel topPanel = new JPanel();
         JButton btnCreate = new JButton("Create Database");
         JButton btnAdd = new JButton("Add Record");
         JButton btnSearch = new JButton("Search");
+        JButton btnFind = new JButton("Quick Search");
         JButton btnBackup = new JButton("Backup");
         JButton btnRestore = new JButton("Restore");
         JButton btnClear = new JButton("Clear Database");
@@ -41,10 +68,12 @@ public class MusicDatabaseGUI extends JFrame {
         JButton btnShowAll = new JButton("Show All");
         JButton btnDeleteDB = new JButton("Delete Database");
         JButton btnExport = new JButton("Export to Excel");
+        JButton btnImport = new JButton("Import");
 
         topPanel.add(btnCreate);
         topPanel.add(btnAdd);
         topPanel.add(btnSearch);
+        topPanel.add(btnFind);
         topPanel.add(btnBackup);
         topPanel.add(btnRestore);
         topPanel.add(btnClear);
@@ -53,24 +82,69 @@ public class MusicDatabaseGUI extends JFrame {
         topPanel.add(btnShowAll);
         topPanel.add(btnDeleteDB);
         topPanel.add(btnExport);
+        topPanel.add(btnImport);
 
         add(topPanel, BorderLayout.NORTH);
 
-        String[] columnNames = {"ID", "Title", "Artist", "Album", "Genre", "Duration"};
-        tableModel = new DefaultTableModel(columnNames, 0);
+        tableModel = new MusicRecordTableModel(service, PAGE_SIZE) {
+            @Override
+            public void setValueAt(Object value, int row, int column) {
+                editRecord(row, column, value);
+            }
+        };
         table = new JTable(tableModel);
         add(new JScrollPane(table), BorderLayout.CENTER);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    tableModel.sortBy(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
 
-        btnCreate.addActionListener(e -> {
-            try {
-                dbManager.createDatabase();
-                JOptionPane.showMessageDialog(this, "Database created successfully!");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error creating database!");
+        JPanel bottomPanel = new JPanel();
+        JButton btnPrevPage = new JButton("< Prev");
+        JButton btnNextPage = new JButton("Next >");
+        pageLabel = new JLabel();
+        progressBar = new JProgressBar();
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        btnCancel = new JButton("Cancel");
+        btnCancel.setVisible(false);
+        bottomPanel.add(btnPrevPage);
+        bottomPanel.add(pageLabel);
+        bottomPanel.add(btnNextPage);
+        bottomPanel.add(progressBar);
+        bottomPanel.add(btnCancel);
+        add(bottomPanel, BorderLayout.SOUTH);
+        tableModel.addTableModelListener(e -> updatePageLabel());
+
+        btnCancel.addActionListener(e -> {
+            if (runningTask != null) {
+                runningTask.cancel(false);
             }
         });
 
+        btnPrevPage.addActionListener(e -> {
+            if (tableModel.getPage() > 0) {
+                tableModel.setPage(tableModel.getPage() - 1);
+            }
+        });
+
+        btnNextPage.addActionListener(e -> {
+            if (tableModel.getPage() + 1 < tableModel.getPageCount()) {
+                tableModel.setPage(tableModel.getPage() + 1);
+            }
+        });
+
+        btnCreate.addActionListener(e -> whenDone(service.createDatabase(),
+                ignored -> JOptionPane.showMessageDialog(this, "Database created successfully!"),
+                "Error creating database!"));
+
         btnAdd.addActionListener(e -> {
+            MusicRecord record;
             try {
                 String id = JOptionPane.showInputDialog("Enter ID:");
                 String title = JOptionPane.showInputDialog("Enter Title:");
@@ -79,200 +153,315 @@ public class MusicDatabaseGUI extends JFrame {
                 String genre = JOptionPane.showInputDialog("Enter Genre:");
                 String duration = JOptionPane.showInputDialog("Enter Duration (seconds):");
 
-                MusicRecord record = new MusicRecord(
+                record = new MusicRecord(
                         Integer.parseInt(id), title, artist, album, genre, Integer.parseInt(duration)
                 );
-                dbManager.addRecord(record);
-                loadTable();
-                JOptionPane.showMessageDialog(this, "Record added successfully!");
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Error adding record!");
+                return;
             }
+            whenDone(service.addRecord(record), ignored -> {
+                loadTable();
+                JOptionPane.showMessageDialog(this, "Record added successfully!");
+            }, "Error adding record!");
         });
 
         btnSearch.addActionListener(e -> {
             String fieldName = JOptionPane.showInputDialog("Enter field name (id/title/artist/album/genre/duration):");
             String value = JOptionPane.showInputDialog("Enter value:");
-            try {
-                List<MusicRecord> results = dbManager.searchByField(fieldName, value);
+            whenDone(service.searchByField(fieldName, value), results -> {
                 if (results.isEmpty()) {
                     JOptionPane.showMessageDialog(this, "No records found!");
                 } else {
                     loadTable(results);
                 }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error searching records!");
+            }, "Error searching records!");
+        });
+
+        btnFind.addActionListener(e -> {
+            String text = JOptionPane.showInputDialog("Enter title, artist or album words:");
+            if (text != null && !text.trim().isEmpty()) {
+                whenDone(service.searchText(text, 1000), results -> {
+                    if (results.isEmpty()) {
+                        JOptionPane.showMessageDialog(this, "No records found!");
+                    } else {
+                        loadTable(results);
+                    }
+                }, "Error searching records!");
             }
         });
 
         btnBackup.addActionListener(e -> {
-            String backupPath = JOptionPane.showInputDialog("Enter backup file path:");
-            try {
-                dbManager.backupDatabase(backupPath);
-                JOptionPane.showMessageDialog(this, "Backup created successfully!");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error creating backup!");
+            String backupPath = JOptionPane.showInputDialog("Enter backup file path (or a directory for incremental backups):");
+            if (backupPath == null) {
+                return;
+            }
+            Boolean incremental = askIncremental(backupPath);
+            if (incremental == null) {
+                return;
+            }
+            if (incremental) {
+                whenDone(service.backupIncremental(backupPath),
+                        manifest -> JOptionPane.showMessageDialog(this, "Backup created: " + manifest),
+                        "Error creating backup!");
+            } else {
+                whenDone(service.backupDatabase(backupPath),
+                        ignored -> JOptionPane.showMessageDialog(this, "Backup created successfully!"),
+                        "Error creating backup!");
             }
         });
 
         btnRestore.addActionListener(e -> {
-            String backupPath = JOptionPane.showInputDialog("Enter backup file path:");
-            try {
-                dbManager.restoreDatabase(backupPath);
-                loadTable();
-                JOptionPane.showMessageDialog(this, "Database restored successfully!");
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error restoring database!");
+            String backupPath = JOptionPane.showInputDialog("Enter backup file path (or a directory for incremental backups):");
+            if (backupPath == null) {
+                return;
+            }
+            if (Files.isDirectory(Paths.get(backupPath))) {
+                String time = JOptionPane.showInputDialog("Restore as of (yyyy-MM-ddTHH:mm:ss, empty for the latest backup):");
+                if (time == null) {
+                    return;
+                }
+                Instant pointInTime;
+                try {
+                    pointInTime = time.isBlank() ? null : LocalDateTime.parse(time.trim()).atZone(ZoneId.systemDefault()).toInstant();
+                } catch (DateTimeParseException ex) {
+                    JOptionPane.showMessageDialog(this, "Invalid date: " + time);
+                    return;
+                }
+                whenDone(service.restoreBackup(backupPath, pointInTime), manifest -> {
+                    loadTable();
+                    JOptionPane.showMessageDialog(this, "Database restored from backup " + manifest);
+                }, "Error restoring database!");
+            } else {
+                whenDone(service.restoreDatabase(backupPath), ignored -> {
+                    loadTable();
+                    JOptionPane.showMessageDialog(this, "Database restored successfully!");
+                }, "Error restoring database!");
             }
         });
 
         btnClear.addActionListener(e -> {
-            try {
-                int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to clear the database?", "Confirm Clear", JOptionPane.YES_NO_OPTION);
-                if (confirm == JOptionPane.YES_OPTION) {
-                    dbManager.clearDatabase();
+            int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to clear the database?", "Confirm Clear", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                whenDone(service.clearDatabase(), ignored -> {
                     loadTable();
                     JOptionPane.showMessageDialog(this, "Database cleared!");
-                }
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error clearing database!");
+                }, "Error clearing database!");
             }
         });
 
         btnDeleteKey.addActionListener(e -> {
+            int id;
             try {
-                String id = JOptionPane.showInputDialog("Enter ID to delete:");
-                dbManager.deleteRecordByKey(Integer.parseInt(id));
-                loadTable();
-                JOptionPane.showMessageDialog(this, "Record deleted successfully!");
+                id = Integer.parseInt(JOptionPane.showInputDialog("Enter ID to delete:"));
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Error deleting record!");
+                return;
             }
+            whenDone(service.deleteRecordByKey(id), ignored -> {
+                loadTable();
+                JOptionPane.showMessageDialog(this, "Record deleted successfully!");
+            }, "Error deleting record!");
         });
 
         btnDeleteField.addActionListener(e -> {
-            try {
-                String fieldName = JOptionPane.showInputDialog("Enter field name (title/artist/album/genre):");
-                String value = JOptionPane.showInputDialog("Enter value to delete:");
-                dbManager.deleteRecordByField(fieldName, value);
+            String fieldName = JOptionPane.showInputDialog("Enter field name (title/artist/album/genre):");
+            String value = JOptionPane.showInputDialog("Enter value to delete:");
+            whenDone(service.deleteRecordByField(fieldName, value), ignored -> {
                 loadTable();
                 JOptionPane.showMessageDialog(this, "Record(s) deleted successfully!");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error deleting record(s)!");
-            }
+            }, "Error deleting record(s)!");
         });
 
         btnDeleteDB.addActionListener(e -> {
-            try {
-                int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete the database file?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
-                if (confirm == JOptionPane.YES_OPTION) {
-                    Files.deleteIfExists(Paths.get("music_database.json"));
-                    tableModel.setRowCount(0);
+            int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete the database file?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
+            if (confirm == JOptionPane.YES_OPTION) {
+                whenDone(service.deleteDatabase(), ignored -> {
+                    tableModel.clear();
                     JOptionPane.showMessageDialog(this, "Database file deleted successfully!");
-                }
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error deleting database file!");
+                }, "Error deleting database file!");
             }
         });
 
         btnExport.addActionListener(e -> {
             String filePath = JOptionPane.showInputDialog("Enter the file path to save the Excel file:");
-            if (filePath != null && !filePath.trim().isEmpty()) {
-                try (Workbook workbook = new XSSFWorkbook()) {
-                    Sheet sheet = workbook.createSheet("Music Database");
-                    Row headerRow = sheet.createRow(0);
-                    for (int i = 0; i < tableModel.getColumnCount(); i++) {
-                        Cell cell = headerRow.createCell(i);
-                        cell.setCellValue(tableModel.getColumnName(i));
+            if (filePath != null && !filePath.trim().isEmpty() && runningTask == null) {
+                CompletableFuture<Integer> exporting = service.exportRecords(filePath, null, progressBarListener());
+                trackProgress(exporting);
+                whenDone(exporting,
+                        ignored -> JOptionPane.showMessageDialog(this, "Database exported to Excel successfully!"),
+                        "Error exporting to Excel!");
+            }
+        });
+
+        btnImport.addActionListener(e -> {
+            String filePath = JOptionPane.showInputDialog("Enter the path of the Excel or CSV file to import:");
+            if (filePath != null && !filePath.trim().isEmpty() && runningTask == null) {
+                CompletableFuture<ImportResult> importing = service.importRecords(filePath, progressBarListener());
+                trackProgress(importing);
+                importing.whenCompleteAsync((result, error) -> loadTable(), SwingUtilities::invokeLater);
+                whenDone(importing, result -> {
+                    StringBuilder message = new StringBuilder("Import finished: " + result);
+                    List<String> errors = result.getErrors();
+                    for (int i = 0; i < Math.min(10, errors.size()); i++) {
+                        message.append('\n').append(errors.get(i));
                     }
+                    JOptionPane.showMessageDialog(this, message.toString());
+                }, "Error importing records!");
+            }
+        });
+
+        btnShowAll.addActionListener(e -> loadTable());
+    }
 
-                    List<MusicRecord> records = dbManager.openDatabase();
-                    for (int i = 0; i < records.size(); i++) {
-                        MusicRecord record = records.get(i);
-                        Row row = sheet.createRow(i + 1);
-
-                        row.createCell(0).setCellValue(record.getId());
-                        row.createCell(1).setCellValue(record.getTitle());
-                        row.createCell(2).setCellValue(record.getArtist());
-                        row.createCell(3).setCellValue(record.getAlbum());
-                        row.createCell(4).setCellValue(record.getGenre());
-                        row.createCell(5).setCellValue(record.getDuration());
+    /**
+     * Validates the edit here and queues it with the service, which writes quick successive edits together.
+     * A new id is first looked up on the service, so the collision check does not touch the database on this thread.
+     */
+    private void editRecord(int row, int column, Object newValue) {
+        MusicRecord record = tableModel.getRecordAt(row);
+        if (record == null || newValue == null) {
+            return;
+        }
+        int id = record.getId();
+
+        if (column == 0) {
+            int newId;
+            try {
+                newId = Integer.parseInt(newValue.toString());
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "ID должен быть числом. Изменение отклонено.");
+                return;
+            }
+            if (newId != id) {
+                whenDone(service.getRecord(newId), existing -> {
+                    if (existing != null) {
+                        JOptionPane.showMessageDialog(this, "ID уже существует. Изменение отклонено.");
+                    } else {
+                        queueEdit(id, column, newValue);
                     }
+                }, "Ошибка сохранения изменений!");
+                return;
+            }
+        }
+        queueEdit(id, column, newValue);
+    }
 
-                    try (FileOutputStream fileOut = new FileOutputStream(filePath)) {
-                        workbook.write(fileOut);
+    private void queueEdit(int id, int column, Object newValue) {
+        service.editRecord(id, tableModel.getColumnField(column), newValue.toString())
+                .whenCompleteAsync((ignored, error) -> {
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(this, "Ошибка сохранения изменений: " + cause(error).getMessage());
+                    } else if (column == 0) {
+                        tableModel.replaceId(id, Integer.parseInt(newValue.toString()));
+                    } else {
+                        tableModel.reloadPage();
                     }
+                }, SwingUtilities::invokeLater);
+    }
 
-                    JOptionPane.showMessageDialog(this, "Database exported to Excel successfully!");
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Error exporting to Excel!");
-                }
+    /**
+     * Shows the progress bar and Cancel button until {@code task} completes.
+     */
+    private void trackProgress(CompletableFuture<?> task) {
+        runningTask = task;
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(true);
+        btnCancel.setVisible(true);
+        task.whenCompleteAsync((ignored, error) -> {
+            runningTask = null;
+            progressBar.setVisible(false);
+            btnCancel.setVisible(false);
+        }, SwingUtilities::invokeLater);
+    }
+
+    private ProgressListener progressBarListener() {
+        return (done, total) -> SwingUtilities.invokeLater(() -> {
+            progressBar.setIndeterminate(total < 0);
+            if (total >= 0) {
+                progressBar.setMaximum((int) Math.max(1, total));
+                progressBar.setValue((int) done);
             }
         });
+    }
 
-        tableModel.addTableModelListener(e -> {
-            if (e.getType() == TableModelEvent.UPDATE) {
-                int row = e.getFirstRow();
-                int column = e.getColumn();
-                Object newValue = tableModel.getValueAt(row, column);
+    /**
+     * Whether a backup to {@code path} goes into a directory of incremental backups. An existing directory or
+     * file answers that itself; for a new path the user chooses. Returns {@code null} if the choice was cancelled.
+     */
+    private Boolean askIncremental(String path) {
+        Path target = Paths.get(path);
+        if (Files.exists(target)) {
+            return Files.isDirectory(target);
+        }
+        Object[] options = {"Single file", "Incremental backup directory"};
+        int choice = JOptionPane.showOptionDialog(this, path + " does not exist yet. Create it as:", "Backup",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        return choice == JOptionPane.CLOSED_OPTION ? null : choice == 1;
+    }
 
-                try {
-                    List<MusicRecord> records = dbManager.openDatabase();
-                    MusicRecord record = records.get(row);
-
-                    switch (column) {
-                        case 0 -> { 
-                            try {
-                                int newId = Integer.parseInt(newValue.toString());
-                                if (records.stream().anyMatch(r -> r.getId() == newId)) {
-                                    JOptionPane.showMessageDialog(this, "ID уже существует. Изменение отклонено.");
-                                    tableModel.removeTableModelListener((TableModelListener) this);
-                                    tableModel.setValueAt(record.getId(), row, column); 
-                                    tableModel.addTableModelListener((TableModelListener) this);
-                                } else {
-                                    record.setId(newId);
-                                }
-                            } catch (NumberFormatException ex) {
-                                JOptionPane.showMessageDialog(this, "ID должен быть числом. Изменение отклонено.");
-                                tableModel.removeTableModelListener((TableModelListener) this);
-                                tableModel.setValueAt(record.getId(), row, column); 
-                                tableModel.addTableModelListener((TableModelListener) this);
-                            }
-                        }
-
-                        case 1 -> record.setTitle((String) newValue);
-                        case 2 -> record.setArtist((String) newValue);
-                        case 3 -> record.setAlbum((String) newValue);
-                        case 4 -> record.setGenre((String) newValue);
-                        case 5 -> record.setDuration((Integer) newValue);
-                    }
-                    dbManager.saveDatabase(records);
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(this, "Ошибка сохранения изменений: " + ex.getMessage());
-                }
+    /**
+     * Saves pending edits and closes the database on a background thread, showing progress meanwhile, then exits.
+     */
+    private void closeDatabase() {
+        if (!isEnabled()) {
+            return;
+        }
+        setEnabled(false);
+        progressBar.setString("Saving changes...");
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(true);
+        Thread.ofPlatform().name("music-db-close").start(() -> {
+            IOException error = null;
+            try {
+                service.close();
+            } catch (IOException ex) {
+                error = ex;
             }
+            try {
+                dbManager.close();
+            } catch (IOException ex) {
+                error = error == null ? ex : error;
+            }
+            IOException failure = error;
+            SwingUtilities.invokeLater(() -> {
+                if (failure != null) {
+                    JOptionPane.showMessageDialog(this, "Ошибка сохранения изменений: " + failure.getMessage());
+                }
+                dispose();
+                System.exit(failure == null ? 0 : 1);
+            });
         });
-
-        btnShowAll.addActionListener(e -> loadTable());
     }
 
     private void loadTable() {
-        try {
-            List<MusicRecord> records = dbManager.openDatabase();
-            loadTable(records);
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error loading database!");
-        }
+        whenDone(service.getRecordIds(), tableModel::showIds, "Error loading database!");
     }
 
     private void loadTable(List<MusicRecord> records) {
-        tableModel.setRowCount(0);
-        for (MusicRecord record : records) {
-            tableModel.addRow(new Object[]{
-                    record.getId(), record.getTitle(), record.getArtist(),
-                    record.getAlbum(), record.getGenre(), record.getDuration()
-            });
-        }
+        tableModel.showRecords(records);
+    }
+
+    /**
+     * Handles the outcome of a background task on the event dispatch thread. A cancelled task shows no message.
+     */
+    private <T> void whenDone(CompletableFuture<T> future, Consumer<T> onSuccess, String errorMessage) {
+        future.whenCompleteAsync((result, error) -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else if (!(cause(error) instanceof CancellationException)) {
+                JOptionPane.showMessageDialog(this, errorMessage);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    private static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void updatePageLabel() {
+        pageLabel.setText("Page " + (tableModel.getPage() + 1) + " of " + tableModel.getPageCount()
+                + " (" + tableModel.getTotalRowCount() + " records)");
     }
 
     public static void main(String[] args) {
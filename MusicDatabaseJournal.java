@@ -0,0 +1,319 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change log kept next to the JSON snapshot.
+ * Each append is written as one frame ({@code length, crc32, payload}), so a batch of entries
+ * is replayed all-or-nothing and a torn tail left by a crash is detected and cut off.
+ */
+public class MusicDatabaseJournal implements Closeable {
+    public enum Op { PUT, DELETE }
+
+    public static final class Entry {
+        private final Op op;
+        private final int id;
+        private final MusicRecord record;
+
+        private Entry(Op op, int id, MusicRecord record) {
+            this.op = op;
+            this.id = id;
+            this.record = record;
+        }
+
+        public static Entry put(MusicRecord record) {
+            return new Entry(Op.PUT, record.getId(), record);
+        }
+
+        public static Entry delete(int id) {
+            return new Entry(Op.DELETE, id, null);
+        }
+
+        public Op getOp() {
+            return op;
+        }
+        public int getId() {
+            return id;
+        }
+        public MusicRecord getRecord() {
+            return record;
+        }
+    }
+
+    private static final int FRAME_HEADER_BYTES = 8;
+
+    private final Path logPath;
+    private final Path rotatedPath;
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private long appendedSeq;
+    private long syncedSeq;
+    private long appendedBytes;
+
+    public MusicDatabaseJournal(Path logPath) {
+        this.logPath = logPath;
+        this.rotatedPath = Paths.get(logPath + ".1");
+    }
+
+    public Path getPath() {
+        return logPath;
+    }
+
+    /**
+     * Appends the entries as a single frame without forcing them to disk.
+     * Returns a sequence number to pass to {@link #sync(long)}. If the write fails, the part of the frame
+     * already written is cut off again so that later frames stay readable.
+     */
+    public synchronized long append(List<Entry> entries) throws IOException {
+        ByteBuffer frame = encodeFrame(entries);
+        int frameBytes = frame.remaining();
+        if (channel == null) {
+            channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long validBytes = channel.size();
+        try {
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(validBytes);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        appendedBytes += frameBytes;
+        return ++appendedSeq;
+    }
+
+    /**
+     * Makes everything up to {@code seq} durable. Callers that arrive while another fsync is running
+     * are usually covered by it, so concurrent writers share one fsync (group commit).
+     */
+    public void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            FileChannel target;
+            long upTo;
+            synchronized (this) {
+                target = channel;
+                upTo = appendedSeq;
+            }
+            if (target != null) {
+                target.force(false);
+            }
+            syncedSeq = upTo;
+        }
+    }
+
+    /**
+     * Bytes appended since this journal was opened, across rotations and resets.
+     */
+    public synchronized long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    public synchronized long size() throws IOException {
+        if (channel != null) {
+            return channel.size();
+        }
+        return Files.exists(logPath) ? Files.size(logPath) : 0;
+    }
+
+    /**
+     * Moves the active log aside so a compaction can snapshot the state while new entries go to a fresh log.
+     */
+    public void rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeChannel();
+                syncedSeq = appendedSeq;
+                if (Files.exists(logPath)) {
+                    Files.move(logPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+    }
+
+    public boolean hasRotated() {
+        return Files.exists(rotatedPath);
+    }
+
+    public void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    public void reset() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeChannel();
+                syncedSeq = appendedSeq;
+                Files.deleteIfExists(rotatedPath);
+                Files.deleteIfExists(logPath);
+            }
+        }
+    }
+
+    /**
+     * Replays the rotated log (left behind by an unfinished compaction) and then the active log.
+     * Entries are PUT/DELETE by id, so replaying a log that is already contained in the snapshot is harmless.
+     */
+    public synchronized void replay(Consumer<Entry> consumer) throws IOException {
+        closeChannel();
+        replayFile(rotatedPath, consumer);
+        long validBytes = replayFile(logPath, consumer);
+        if (Files.exists(logPath) && Files.size(logPath) > validBytes) {
+            try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                ch.truncate(validBytes);
+                ch.force(false);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeChannel();
+                syncedSeq = appendedSeq;
+            }
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static long replayFile(Path path, Consumer<Entry> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long validBytes = 0;
+        long fileBytes = Files.size(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    // A torn header may hold any length; one reaching past the end of the file is not a frame.
+                    if (length < 0 || validBytes + FRAME_HEADER_BYTES + length > fileBytes) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                decodePayload(payload, consumer);
+                validBytes += FRAME_HEADER_BYTES + length;
+            }
+        }
+        return validBytes;
+    }
+
+    private static ByteBuffer encodeFrame(List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * entries.size() + FRAME_HEADER_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        writeEntries(out, entries);
+        out.flush();
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_BYTES, frame.limit() - FRAME_HEADER_BYTES);
+        frame.putInt(0, frame.limit() - FRAME_HEADER_BYTES);
+        frame.putInt(4, (int) crc.getValue());
+        return frame;
+    }
+
+    static void writeEntries(DataOutputStream out, List<Entry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeByte(entry.op.ordinal());
+            out.writeInt(entry.id);
+            if (entry.op == Op.PUT) {
+                MusicRecord record = entry.record;
+                writeString(out, record.getTitle());
+                writeString(out, record.getArtist());
+                writeString(out, record.getAlbum());
+                writeString(out, record.getGenre());
+                out.writeInt(record.getDuration());
+            }
+        }
+    }
+
+    /**
+     * Reads one block written by {@link #writeEntries} and returns its entry count.
+     */
+    static int readEntries(DataInputStream in, Consumer<Entry> consumer) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Op op = Op.values()[in.readByte()];
+            int id = in.readInt();
+            if (op == Op.PUT) {
+                String title = readString(in);
+                String artist = readString(in);
+                String album = readString(in);
+                String genre = readString(in);
+                int duration = in.readInt();
+                consumer.accept(Entry.put(new MusicRecord(id, title, artist, album, genre, duration)));
+            } else {
+                consumer.accept(Entry.delete(id));
+            }
+        }
+        return count;
+    }
+
+    private static void decodePayload(byte[] payload, Consumer<Entry> consumer) throws IOException {
+        readEntries(new DataInputStream(new ByteArrayInputStream(payload)), consumer);
+    }
+
+    /**
+     * Writes {@code value} as an int length followed by its UTF-8 bytes, or -1 for null. Unlike
+     * {@link DataOutputStream#writeUTF(String)} this has no 64 KB limit.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
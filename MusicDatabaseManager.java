@@ -1,159 +1,1775 @@
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import javax.management.JMException;
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe: reads share a read lock, mutations are applied one at a time under the write lock.
+ * Waiting for durability (journal fsync or snapshot write) happens after the write lock is released,
+ * so concurrent writers share one fsync or one snapshot write.
+ */
+public class MusicDatabaseManager implements Closeable {
+    private static final long COMPACTION_THRESHOLD_BYTES = 8L * 1024 * 1024;
+    /** Reads look for external changes to the files at most this often; {@link #refresh()} always looks. */
+    private static final long DISK_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final List<String> NUMERIC_FIELDS = List.of("id", "duration");
+    private static final List<String> STRING_FIELDS = List.of("title", "artist", "album", "genre");
+    private static final Map<String, Double> TEXT_FIELD_WEIGHTS = Map.of("title", 1.0, "artist", 0.9, "album", 0.7);
+    private static final int COMMON_TOKEN_RECORDS = 10_000;
+    private static final int FILTER_RATIO = 8;
+    private static final int PREFIX_ESTIMATE_KEYS = 256;
+    private static final Set<String> SHARED_FIELDS = Set.of("artist", "album", "genre");
+    private static final IntPostings NO_POSTINGS = new IntPostings();
+    private static final int MAX_BACKUP_SEGMENTS = 48;
+    private static final int QUERY_CACHE_ENTRIES = 1024;
+    private static final long QUERY_CACHE_IDS = 4_000_000;
+    private static final List<String> DURATION_TOTAL_FIELDS = List.of("artist", "album", "genre");
+    private static final List<QueryCache.Dependency> TEXT_DEPENDENCIES = TEXT_FIELD_WEIGHTS.keySet().stream()
+            .map(field -> new QueryCache.Dependency(field, QueryCache.ANY_VALUE)).toList();
 
-public class MusicDatabaseManager {
     private final File databaseFile;
-    private final Map<Integer, MusicRecord> recordById = new HashMap<>();
-    private final Map<String, TreeMap<String, List<MusicRecord>>> indexedFields = new HashMap<>();
+    private final SnapshotFormat snapshotFormat;
+    private final IntObjectMap<MusicRecord> recordById = new IntObjectMap<>();
+    private final Map<String, TreeMap<String, IntPostings>> indexedFields = new HashMap<>();
+    private final Map<String, TreeMap<Integer, IntPostings>> numericIndexes = new HashMap<>();
+    private final Map<String, String> sharedStrings = new HashMap<>();
+    private final Map<String, TokenIndex> textIndexes = new HashMap<>();
+    private final Map<String, Map<String, long[]>> durationTotals = new HashMap<>();
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_ENTRIES, QUERY_CACHE_IDS);
+    private final MusicDatabaseJournal journal;
+    private final MusicDatabaseMetrics metrics;
+    private final ExecutorService compactionExecutor;
+    private Future<?> pendingCompaction;
+    private boolean loaded;
+    private volatile FileStamp snapshotStamp;
+    private FileStamp journalStamp;
+    private volatile long lastDiskCheck = System.nanoTime() - DISK_CHECK_INTERVAL_NANOS;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object snapshotLock = new Object();
+    /** Guards moving a snapshot into place together with recording its stamp; never held while taking another lock. */
+    private final Object stampLock = new Object();
+    private final Object backupLock = new Object();
+    private long stateVersion;
+    private volatile long writtenVersion;
 
     public MusicDatabaseManager(String filePath) {
+        this(filePath, false);
+    }
+
+    /**
+     * In journaled mode mutations are appended to {@code <filePath>.log} instead of rewriting the JSON file;
+     * the log is folded back into the JSON snapshot by a background compaction once it grows large.
+     */
+    public MusicDatabaseManager(String filePath, boolean journaled) {
         this.databaseFile = new File(filePath);
+        this.snapshotFormat = SnapshotFormat.forPath(databaseFile.toPath());
+        for (String field : NUMERIC_FIELDS) {
+            numericIndexes.put(field, new TreeMap<>());
+        }
+        for (String field : STRING_FIELDS) {
+            indexedFields.put(field, new TreeMap<>());
+        }
+        for (String field : TEXT_FIELD_WEIGHTS.keySet()) {
+            textIndexes.put(field, new TokenIndex());
+        }
+        for (String field : DURATION_TOTAL_FIELDS) {
+            durationTotals.put(field, new HashMap<>());
+        }
+        if (journaled) {
+            this.journal = new MusicDatabaseJournal(Paths.get(filePath + ".log"));
+            this.compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "music-db-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.journal = null;
+            this.compactionExecutor = null;
+        }
+        this.metrics = new MusicDatabaseMetrics(this, databaseFile.getPath());
+    }
+
+    /**
+     * Latency histograms, counters and index sizes of this database; see {@link MusicDatabaseMetrics}.
+     */
+    public MusicDatabaseMetrics getMetrics() {
+        return metrics;
     }
 
     public void createDatabase() throws IOException {
-        if (!databaseFile.exists()) {
-            databaseFile.createNewFile();
-            saveDatabase(new ArrayList<>());
-        }
-        rebuildIndexes();
+        exclusively(() -> {
+            if (!databaseFile.exists()) {
+                databaseFile.createNewFile();
+                replaceAll(new ArrayList<>());
+            }
+            ensureLoaded();
+            return null;
+        });
     }
 
+    /**
+     * Returns a copy of the current records from memory, so it costs time and memory proportional to the
+     * database; {@link #getRecord(int)} and {@link #getRecords(int[], int, int)} read only what they return.
+     * The file is only read on first use and when its size or modification time shows that it was changed
+     * by someone else.
+     */
     public List<MusicRecord> openDatabase() throws IOException {
-        if (!databaseFile.exists()) {
-            throw new FileNotFoundException("Database file not found!");
+        long start = metrics.start();
+        try {
+            return underLoadedReadLock(() -> new ArrayList<>(recordById.values()));
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.OPEN, start);
         }
-        try (FileReader reader = new FileReader(databaseFile)) {
-            List<MusicRecord> records = new Gson().fromJson(reader, new TypeToken<List<MusicRecord>>() {}.getType());
-            if (records == null) {
-                records = new ArrayList<>();
+    }
+
+    /**
+     * Same rows as {@link #openDatabase()}, as ids only; cheap enough to back a table of millions of rows.
+     */
+    public int[] getRecordIds() throws IOException {
+        return underLoadedReadLock(recordById::keys);
+    }
+
+    public void saveDatabase(List<MusicRecord> records) throws IOException {
+        exclusively(MusicDatabaseMetrics.Operation.SAVE, () -> {
+            replaceAll(records);
+            return null;
+        });
+    }
+
+    /**
+     * Re-reads the database if the file was modified outside this manager.
+     * Returns {@code true} when a reload happened.
+     */
+    public boolean refresh() throws IOException {
+        return underWriteLock(() -> {
+            if (loaded && !needsReload()) {
+                return false;
+            }
+            reload();
+            return true;
+        });
+    }
+
+    public int getRecordCount() {
+        return underReadLock(recordById::size);
+    }
+
+    public MusicRecord getRecord(int id) {
+        return underReadLock(() -> recordById.get(id));
+    }
+
+    /**
+     * The records for {@code ids[from..to)} in that order, skipping ids that no longer exist.
+     */
+    public List<MusicRecord> getRecords(int[] ids, int from, int to) {
+        return underReadLock(() -> {
+            List<MusicRecord> records = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                MusicRecord record = recordById.get(ids[i]);
+                if (record != null) {
+                    records.add(record);
+                }
             }
-            rebuildIndexes(records);
             return records;
-        }
+        });
     }
 
-    public void saveDatabase(List<MusicRecord> records) throws IOException {
-        try (FileWriter writer = new FileWriter(databaseFile)) {
-            new Gson().toJson(records, writer);
+    /**
+     * Returns {@code ids} ordered by the given field, ties by id; records without a value come last
+     * (first when descending). When the ids cover a large part of the database the field's index is
+     * walked in order instead of comparing records. Ids of missing records are dropped.
+     */
+    public int[] sortIds(int[] ids, String fieldName, boolean descending) {
+        if (!isIndexed(fieldName)) {
+            throw new IllegalArgumentException("Field name not indexed!");
         }
-        rebuildIndexes(records);
+        return underReadLock(MusicDatabaseMetrics.Operation.SORT, () -> {
+            if ((long) ids.length * FILTER_RATIO < recordById.size()) {
+                return sortByComparison(ids, fieldName, descending);
+            }
+            return sortByIndex(ids, fieldName, descending);
+        });
     }
 
     public void addRecord(MusicRecord record) throws IOException {
-        if (recordById.containsKey(record.getId())) {
-            throw new IllegalArgumentException("Record with the same ID already exists!");
-        }
-        recordById.put(record.getId(), record);
-        indexRecord(record);
-        ArrayList<MusicRecord> newBase = new ArrayList<>(recordById.values());
-        saveDatabase(newBase);
+        long ticket = underWriteLock(MusicDatabaseMetrics.Operation.WRITE, () -> {
+            ensureLoaded();
+            if (recordById.containsKey(record.getId())) {
+                throw new IllegalArgumentException("Record with the same ID already exists!");
+            }
+            return append(Collections.singletonList(MusicDatabaseJournal.Entry.put(record)), () -> {
+                recordById.put(record.getId(), record);
+                indexRecord(record);
+            });
+        });
+        awaitDurable(ticket);
     }
 
     public void deleteRecordByKey(int id) throws IOException {
-        MusicRecord record = recordById.remove(id);
-        if (record != null) {
-            deindexRecord(record);
-            ArrayList<MusicRecord> newBase = new ArrayList<>(recordById.values());
-            saveDatabase(newBase);
-        }
+        long ticket = underWriteLock(MusicDatabaseMetrics.Operation.WRITE, () -> {
+            ensureLoaded();
+            MusicRecord record = recordById.get(id);
+            if (record == null) {
+                return 0L;
+            }
+            return append(Collections.singletonList(MusicDatabaseJournal.Entry.delete(id)), () -> {
+                recordById.remove(id);
+                deindexRecord(record);
+            });
+        });
+        awaitDurable(ticket);
     }
 
     public void deleteRecordByField(String fieldName, String value) throws IOException {
-        TreeMap<String, List<MusicRecord>> fieldIndex = indexedFields.get(fieldName);
-        if (fieldIndex != null) {
-            List<MusicRecord> recordsToDelete = new ArrayList<>(fieldIndex.getOrDefault(value, new ArrayList<>()));
-            if (!recordsToDelete.isEmpty()) {
-                for (MusicRecord record : recordsToDelete) {
-                    recordById.remove(record.getId());
-                    deindexRecord(record);
-                }
-                ArrayList<MusicRecord> newBase = new ArrayList<>(recordById.values());
-                saveDatabase(newBase);
-            } else {
+        long ticket = underWriteLock(MusicDatabaseMetrics.Operation.WRITE, () -> {
+            ensureLoaded();
+            if (!isIndexed(fieldName)) {
+                throw new IllegalArgumentException("Field name not indexed!");
+            }
+            int[] idsToDelete = postings(fieldName, value).toArray();
+            if (idsToDelete.length == 0) {
                 throw new IllegalArgumentException("No records found for deletion!");
             }
-        } else {
-            throw new IllegalArgumentException("Field name not indexed!");
+            List<MusicDatabaseJournal.Entry> changes = new ArrayList<>(idsToDelete.length);
+            for (int id : idsToDelete) {
+                changes.add(MusicDatabaseJournal.Entry.delete(id));
+            }
+            return append(changes, () -> {
+                for (int id : idsToDelete) {
+                    deindexRecord(recordById.remove(id));
+                }
+            });
+        });
+        awaitDurable(ticket);
+    }
+
+    public BatchResult addRecords(Collection<MusicRecord> records) throws IOException {
+        MusicRecordBatch batch = new MusicRecordBatch();
+        for (MusicRecord record : records) {
+            batch.add(record);
+        }
+        return apply(batch);
+    }
+
+    public BatchResult deleteRecordsByKey(Collection<Integer> ids) throws IOException {
+        MusicRecordBatch batch = new MusicRecordBatch();
+        for (int id : ids) {
+            batch.delete(id);
         }
+        return apply(batch);
+    }
+
+    /**
+     * Sets one field of a record, e.g. {@code updateRecord(7, "title", "Yesterday")}. The record object is
+     * replaced rather than modified, only the indexes of that field are updated (every index when the id
+     * changes) and only this record is written to the journal. Without a journal the whole file is rewritten,
+     * as for every other change.
+     */
+    public void updateRecord(int id, String fieldName, String value) throws IOException {
+        updateRecords(Collections.singletonList(new RecordUpdate(id, fieldName, value)));
+    }
+
+    /**
+     * Applies field updates in order with one journal write. Each update addresses the record by its id at
+     * that point, so an update after an id change uses the new id. All updates are validated first; if one is
+     * rejected none is applied.
+     */
+    public void updateRecords(List<RecordUpdate> updates) throws IOException {
+        long ticket = underWriteLock(MusicDatabaseMetrics.Operation.WRITE, () -> {
+            ensureLoaded();
+            validateUpdates(updates);
+            List<MusicDatabaseJournal.Entry> changes = new ArrayList<>(updates.size());
+            MusicRecord[] before = new MusicRecord[updates.size()];
+            MusicRecord[] after = new MusicRecord[updates.size()];
+            Map<Integer, MusicRecord> staged = new HashMap<>();
+            for (int i = 0; i < updates.size(); i++) {
+                RecordUpdate update = updates.get(i);
+                MusicRecord current = staged.containsKey(update.getId()) ? staged.get(update.getId()) : recordById.get(update.getId());
+                MusicRecord updated = withField(current, update.getField(), update.getValue());
+                if (updated.getId() != current.getId()) {
+                    staged.put(current.getId(), null);
+                    changes.add(MusicDatabaseJournal.Entry.delete(current.getId()));
+                }
+                staged.put(updated.getId(), updated);
+                changes.add(MusicDatabaseJournal.Entry.put(updated));
+                before[i] = current;
+                after[i] = updated;
+            }
+            return changes.isEmpty() ? 0L : append(changes, () -> {
+                for (int i = 0; i < before.length; i++) {
+                    if (after[i].getId() != before[i].getId()) {
+                        recordById.remove(before[i].getId());
+                        deindexRecord(before[i]);
+                        recordById.put(after[i].getId(), after[i]);
+                        indexRecord(after[i]);
+                    } else {
+                        recordById.put(after[i].getId(), after[i]);
+                        reindexField(before[i], after[i], updates.get(i).getField());
+                    }
+                }
+            });
+        });
+        awaitDurable(ticket);
+    }
+
+    /**
+     * Applies all changes of the batch in order. ID uniqueness is checked for the whole batch before
+     * anything is modified, so a rejected batch leaves the database untouched. Deletes of unknown IDs are ignored.
+     */
+    public BatchResult apply(MusicRecordBatch batch) throws IOException {
+        long start = System.nanoTime();
+        int[] counts = new int[2];
+        long ticket = applyDeferred(batch, counts);
+        awaitDurable(ticket);
+        return new BatchResult(counts[0], counts[1], System.nanoTime() - start);
+    }
+
+    /**
+     * Applies a batch like {@link #apply(MusicRecordBatch)} but returns its durability ticket instead of waiting
+     * for it, so a bulk writer can apply many batches and call {@link #awaitDurable(long)} once for the last one.
+     * {@code counts} receives the number of records added and deleted.
+     */
+    long applyDeferred(MusicRecordBatch batch, int[] counts) throws IOException {
+        return underWriteLock(MusicDatabaseMetrics.Operation.WRITE, () -> {
+            ensureLoaded();
+            validateBatch(batch);
+            List<MusicDatabaseJournal.Entry> changes = new ArrayList<>(batch.size());
+            Map<Integer, Boolean> presentAfter = new HashMap<>();
+            int added = 0;
+            int deleted = 0;
+            for (MusicDatabaseJournal.Entry change : batch.getChanges()) {
+                int id = change.getId();
+                if (change.getOp() == MusicDatabaseJournal.Op.PUT) {
+                    presentAfter.put(id, true);
+                    changes.add(change);
+                    added++;
+                } else if (presentAfter.getOrDefault(id, recordById.containsKey(id))) {
+                    presentAfter.put(id, false);
+                    changes.add(change);
+                    deleted++;
+                }
+            }
+            long ticket = changes.isEmpty() ? 0L : append(changes, () -> {
+                for (MusicDatabaseJournal.Entry change : changes) {
+                    if (change.getOp() == MusicDatabaseJournal.Op.PUT) {
+                        recordById.put(change.getId(), change.getRecord());
+                        indexRecord(change.getRecord());
+                    } else {
+                        deindexRecord(recordById.remove(change.getId()));
+                    }
+                }
+            });
+            counts[0] += added;
+            counts[1] += deleted;
+            return ticket;
+        });
     }
 
     public List<MusicRecord> searchByField(String fieldName, String value) {
-        TreeMap<String, List<MusicRecord>> fieldIndex = indexedFields.get(fieldName);
-        if (fieldIndex != null) {
-            return fieldIndex.getOrDefault(value, new ArrayList<>());
+        if (!isIndexed(fieldName)) {
+            return Collections.emptyList();
+        }
+        return underReadLock(MusicDatabaseMetrics.Operation.SEARCH, () -> collect(Collections.singletonList(postings(fieldName, value)), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Records with {@code min <= id <= max}; none if {@code min > max}.
+     */
+    public List<MusicRecord> searchByIdRange(int min, int max) {
+        return underReadLock(MusicDatabaseMetrics.Operation.RANGE_SEARCH, () -> collect(rangePostings("id", min, max), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Records with {@code min <= duration <= max}; none if {@code min > max}.
+     */
+    public List<MusicRecord> searchByDurationRange(int min, int max) {
+        return underReadLock(MusicDatabaseMetrics.Operation.RANGE_SEARCH, () -> collect(rangePostings("duration", min, max), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Returns the records whose {@code title}, {@code artist}, {@code album} or {@code genre} starts with {@code prefix}.
+     */
+    public List<MusicRecord> searchByPrefix(String fieldName, String prefix) {
+        if (!indexedFields.containsKey(fieldName)) {
+            throw new IllegalArgumentException("Prefix search is only supported on text fields!");
+        }
+        return underReadLock(MusicDatabaseMetrics.Operation.PREFIX_SEARCH, () -> collect(prefixPostings(fieldName, prefix), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Returns up to {@code k} records in the order of the given field, e.g. the ten longest tracks
+     * with {@code topByField("duration", 10, true)}.
+     */
+    public List<MusicRecord> topByField(String fieldName, int k, boolean descending) {
+        NavigableMap<?, IntPostings> fieldIndex = numericIndexes.containsKey(fieldName)
+                ? numericIndexes.get(fieldName) : indexedFields.get(fieldName);
+        if (fieldIndex == null) {
+            throw new IllegalArgumentException("Field name not indexed!");
+        }
+        return underReadLock(MusicDatabaseMetrics.Operation.RANGE_SEARCH, () -> collect((descending ? fieldIndex.descendingMap() : fieldIndex).values(), k));
+    }
+
+    /**
+     * Number of records per value of a text field, in value order, e.g. the genre facet. Read from the field's
+     * index, so it costs one step per distinct value rather than a pass over the records.
+     */
+    public Map<String, Integer> countByField(String fieldName) {
+        if (!indexedFields.containsKey(fieldName)) {
+            throw new IllegalArgumentException("Facets are only supported on text fields!");
+        }
+        return underReadLock(MusicDatabaseMetrics.Operation.AGGREGATE, () -> {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Map.Entry<String, IntPostings> entry : indexedFields.get(fieldName).entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().size());
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Total duration per artist, album or genre, in value order. The totals are kept up to date as records
+     * change instead of being summed on each call.
+     */
+    public Map<String, Long> totalDurationByField(String fieldName) {
+        Map<String, long[]> fieldTotals = durationTotals.get(fieldName);
+        if (fieldTotals == null) {
+            throw new IllegalArgumentException("Duration totals are only kept for artist, album and genre!");
+        }
+        return underReadLock(MusicDatabaseMetrics.Operation.AGGREGATE, () -> {
+            Map<String, Long> totals = new LinkedHashMap<>();
+            for (String value : indexedFields.get(fieldName).keySet()) {
+                totals.put(value, fieldTotals.get(value)[0]);
+            }
+            return totals;
+        });
+    }
+
+    /**
+     * Word search over title, artist and album that ignores case and diacritics and tolerates typos,
+     * so {@code "beatles"} finds "The Beatles". Records matching more query words rank first, then by score.
+     * Words are evaluated rarest first; very common words only rescore records already found by rarer ones.
+     * A single word is answered by walking its postings best score first, so it stops after {@code limit} hits
+     * however common the word is. Results are cached until a title, artist or album changes.
+     */
+    public List<MusicRecord> searchText(String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive!");
+        }
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(TokenIndex.tokenize(query)));
+        if (queryTokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String key = "text " + limit + " " + String.join(" ", queryTokens);
+        return underReadLock(MusicDatabaseMetrics.Operation.TEXT_SEARCH, () -> {
+            int[] ids = queryCache.get(key);
+            if (ids == null) {
+                ids = queryTokens.size() == 1 ? topMatches(queryTokens.get(0), limit) : rankMatches(queryTokens, limit);
+                queryCache.put(key, ids, TEXT_DEPENDENCIES);
+            }
+            List<MusicRecord> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                result.add(recordById.get(id));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Ranks the records of a single query word without scoring them all. A record's score is the best of its
+     * matching (field, token) pairs, so the pairs are grouped by score and each group is merged in id order;
+     * ids already taken from a better group are skipped. Gives the same order as {@link #rankMatches}.
+     */
+    private int[] topMatches(String queryToken, int limit) {
+        TreeMap<Double, List<IntPostings>> groups = new TreeMap<>(Comparator.reverseOrder());
+        for (Map.Entry<String, TokenIndex> entry : textIndexes.entrySet()) {
+            double weight = TEXT_FIELD_WEIGHTS.get(entry.getKey());
+            for (Map.Entry<String, Double> match : entry.getValue().matchingTokens(queryToken).entrySet()) {
+                groups.computeIfAbsent(match.getValue() * weight, s -> new ArrayList<>())
+                        .add(entry.getValue().postingsOf(match.getKey()));
+            }
+        }
+        int[] ids = new int[limit];
+        int found = 0;
+        List<IntPostings> better = new ArrayList<>();
+        for (List<IntPostings> group : groups.values()) {
+            int[] cursors = new int[group.size()];
+            while (found < limit) {
+                int next = -1;
+                for (int i = 0; i < cursors.length; i++) {
+                    IntPostings postings = group.get(i);
+                    if (cursors[i] < postings.size() && (next < 0 || postings.get(cursors[i]) < group.get(next).get(cursors[next]))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                int id = group.get(next).get(cursors[next]);
+                for (int i = 0; i < cursors.length; i++) {
+                    if (cursors[i] < group.get(i).size() && group.get(i).get(cursors[i]) == id) {
+                        cursors[i]++;
+                    }
+                }
+                if (!containsAny(better, id)) {
+                    ids[found++] = id;
+                }
+            }
+            if (found == limit) {
+                break;
+            }
+            better.addAll(group);
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    private static boolean containsAny(List<IntPostings> postings, int id) {
+        for (IntPostings ids : postings) {
+            if (ids.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] rankMatches(List<String> queryTokens, int limit) {
+        Map<String, Integer> frequency = new HashMap<>();
+        for (String token : queryTokens) {
+            int records = 0;
+            for (TokenIndex index : textIndexes.values()) {
+                records += index.documentFrequency(token);
+            }
+            frequency.put(token, records);
+        }
+        queryTokens.sort(Comparator.comparingInt(frequency::get));
+        TextScores scores = new TextScores();
+        for (String token : queryTokens) {
+            boolean scoredOnly = scores.size() > 0 && frequency.get(token) > COMMON_TOKEN_RECORDS;
+            scores.nextToken();
+            for (Map.Entry<String, TokenIndex> entry : textIndexes.entrySet()) {
+                entry.getValue().collectMatches(token, TEXT_FIELD_WEIGHTS.get(entry.getKey()), scores, scoredOnly);
+            }
         }
-        return Collections.emptyList();
+        return scores.top(limit);
+    }
+
+    /**
+     * Runs a conjunctive query. Conditions are evaluated in the order chosen by {@link #explain(MusicQuery)};
+     * results are ordered by id.
+     */
+    public List<MusicRecord> query(MusicQuery query) {
+        return underReadLock(MusicDatabaseMetrics.Operation.QUERY, () -> runQuery(query));
+    }
+
+    /**
+     * Plans a query without running it. The most selective condition (by index cardinality) seeds the result
+     * as a sorted id list; later conditions are intersected with it, or checked per record once the result is
+     * much smaller than their own postings.
+     */
+    public QueryPlan explain(MusicQuery query) {
+        return underReadLock(() -> planQuery(query));
+    }
+
+    private List<MusicRecord> runQuery(MusicQuery query) {
+        if (query.getConditions().isEmpty()) {
+            return new ArrayList<>(recordById.values());
+        }
+        int[] ids = runQueryIds(query);
+        List<MusicRecord> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(recordById.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Results are cached until a record with a value the query depends on changes; cached arrays are shared
+     * and must not be modified.
+     */
+    private int[] runQueryIds(MusicQuery query) {
+        if (query.getConditions().isEmpty()) {
+            return recordById.keys();
+        }
+        query.getConditions().forEach(this::validateCondition);
+        String key = queryKey(query);
+        int[] ids = queryCache.get(key);
+        if (ids == null) {
+            ids = runPlan(planQuery(query));
+            queryCache.put(key, ids, queryDependencies(query));
+        }
+        return ids;
+    }
+
+    private int[] runPlan(QueryPlan plan) {
+        int[] ids = new int[0];
+        for (QueryPlan.Step step : plan.getSteps()) {
+            if (step.getEstimatedRows() == 0) {
+                // Zero is exact for every kind of condition, e.g. an inverted or out-of-range RANGE.
+                return new int[0];
+            }
+            MusicQuery.Condition condition = step.getCondition();
+            switch (step.getStrategy()) {
+                case INDEX -> ids = matchingIds(condition);
+                case INTERSECT -> ids = intersect(ids, matchingIds(condition));
+                case FILTER -> ids = filter(ids, condition);
+            }
+            if (ids.length == 0) {
+                break;
+            }
+        }
+        return ids;
+    }
+
+    private static String queryKey(MusicQuery query) {
+        StringBuilder key = new StringBuilder("query");
+        for (MusicQuery.Condition condition : query.getConditions()) {
+            key.append(' ').append(condition.getKind()).append(' ').append(condition.getField()).append(' ');
+            if (condition.getKind() == MusicQuery.Kind.RANGE) {
+                key.append(condition.getMin()).append(',').append(condition.getMax());
+            } else {
+                key.append(condition.getValue().length()).append(':').append(condition.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * A record can only enter or leave the result of an equality condition if its old or new value is the
+     * compared one; range and prefix conditions depend on every value of their field.
+     */
+    private static List<QueryCache.Dependency> queryDependencies(MusicQuery query) {
+        List<QueryCache.Dependency> dependencies = new ArrayList<>();
+        for (MusicQuery.Condition condition : query.getConditions()) {
+            Object value = QueryCache.ANY_VALUE;
+            if (condition.getKind() == MusicQuery.Kind.EQUALS) {
+                if (!NUMERIC_FIELDS.contains(condition.getField())) {
+                    value = condition.getValue();
+                } else {
+                    try {
+                        value = Integer.parseInt(condition.getValue().trim());
+                    } catch (NumberFormatException e) {
+                        // never matches; any value of the field will do
+                    }
+                }
+            }
+            dependencies.add(new QueryCache.Dependency(condition.getField(), value));
+        }
+        return dependencies;
+    }
+
+    private QueryPlan planQuery(MusicQuery query) {
+        List<QueryPlan.Step> steps = new ArrayList<>();
+        for (MusicQuery.Condition condition : query.getConditions()) {
+            validateCondition(condition);
+            steps.add(new QueryPlan.Step(condition, estimateRows(condition)));
+        }
+        steps.sort(Comparator.comparingLong(QueryPlan.Step::getEstimatedRows));
+        long runningRows = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            QueryPlan.Step step = steps.get(i);
+            if (i == 0) {
+                step.setStrategy(QueryPlan.Strategy.INDEX);
+                runningRows = step.getEstimatedRows();
+            } else if (runningRows * FILTER_RATIO <= step.getEstimatedRows()) {
+                step.setStrategy(QueryPlan.Strategy.FILTER);
+            } else {
+                step.setStrategy(QueryPlan.Strategy.INTERSECT);
+            }
+        }
+        return new QueryPlan(steps, recordById.size());
     }
 
     public void backupDatabase(String backupPath) throws IOException {
-        Files.copy(databaseFile.toPath(), Paths.get(backupPath), StandardCopyOption.REPLACE_EXISTING);
+        long start = metrics.start();
+        try {
+            Path target = Paths.get(backupPath);
+            if (journal == null && hasSnapshotFormat(target)) {
+                synchronized (snapshotLock) {
+                    Files.copy(databaseFile.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                writeSnapshot(target.toFile(), openDatabase());
+            }
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.BACKUP, start);
+        }
     }
 
     public void restoreDatabase(String backupPath) throws IOException {
-        Files.copy(Paths.get(backupPath), databaseFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        rebuildIndexes();
+        exclusively(MusicDatabaseMetrics.Operation.RESTORE, () -> {
+            awaitCompaction();
+            Path source = Paths.get(backupPath);
+            if (hasSnapshotFormat(source)) {
+                Files.copy(source, databaseFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                SnapshotFormat.convert(source, databaseFile.toPath());
+            }
+            if (journal != null) {
+                journal.reset();
+            }
+            reload();
+            return null;
+        });
+    }
+
+    /**
+     * Adds a backup to the {@link BackupRepository} in {@code backupDir}. The first backup, and any backup once the
+     * changes since the last base exceed half the records or {@value #MAX_BACKUP_SEGMENTS} segments, stores a
+     * new base with the records and their indexes; writers wait while it is written. Other backups store only
+     * the records changed since the previous one, or nothing at all if none changed.
+     */
+    public BackupManifest backupIncremental(String backupDir) throws IOException {
+        long start = metrics.start();
+        try {
+            BackupRepository repository = new BackupRepository(Paths.get(backupDir));
+            synchronized (backupLock) {
+                BackupManifest previous = repository.find(null);
+                BackupRepository.Fingerprints before = previous == null ? null : repository.loadFingerprints(previous);
+                Instant created = Instant.now();
+                BackupRepository.Fingerprints[] after = new BackupRepository.Fingerprints[1];
+                BackupManifest manifest = underLoadedReadLock(() -> {
+                    after[0] = fingerprints();
+                    if (previous != null) {
+                        List<MusicDatabaseJournal.Entry> changes = BackupRepository.changes(before, after[0], recordById::get);
+                        int changesSinceBase = previous.getChangesSinceBase() + changes.size();
+                        if (changesSinceBase <= previous.getRecordCount() / 2 && previous.getSegments().size() < MAX_BACKUP_SEGMENTS) {
+                            List<String> segments = new ArrayList<>(previous.getSegments());
+                            if (!changes.isEmpty()) {
+                                segments.add(repository.store(out -> MusicDatabaseJournal.writeEntries(out, changes)));
+                            }
+                            return repository.addManifest(created, recordById.size(), previous.getBase(), segments, changesSinceBase);
+                        }
+                    }
+                    String base = repository.store(out -> {
+                        BackupRepository.writeBaseHeader(out);
+                        BackupRepository.writeRecords(out, recordById.values());
+                        writeIndexes(out);
+                    });
+                    return repository.addManifest(created, recordById.size(), base, List.of(), 0);
+                });
+                repository.saveFingerprints(manifest, after[0]);
+                return manifest;
+            }
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.BACKUP, start);
+        }
+    }
+
+    /**
+     * Replaces the database with the latest backup in {@code backupDir} taken at or before {@code pointInTime}
+     * ({@code null} for the latest). The base's indexes are loaded as stored instead of being rebuilt, unless
+     * they were written in an older layout; the records of later segments are indexed one by one.
+     */
+    public BackupManifest restoreBackup(String backupDir, Instant pointInTime) throws IOException {
+        BackupRepository repository = new BackupRepository(Paths.get(backupDir));
+        BackupManifest manifest = repository.find(pointInTime);
+        if (manifest == null) {
+            throw new IllegalArgumentException("No backup found!");
+        }
+        exclusively(MusicDatabaseMetrics.Operation.RESTORE, () -> {
+            awaitCompaction();
+            recordById.clear();
+            clearIndexes();
+            try {
+                repository.read(manifest.getBase(), in -> {
+                    if (BackupRepository.readBaseHeader(in)) {
+                        BackupRepository.readRecords(in, entry -> recordById.put(entry.getId(), entry.getRecord()));
+                        readIndexes(in);
+                    } else {
+                        // Indexes stored in an older layout would not match this version's lookups.
+                        BackupRepository.readRecords(in, entry -> putRecord(entry.getRecord()));
+                        metrics.indexesRebuilt();
+                    }
+                });
+                for (String segment : manifest.getSegments()) {
+                    repository.read(segment, in -> MusicDatabaseJournal.readEntries(in, this::applyEntry));
+                }
+                writeSnapshot(databaseFile, recordById.values());
+            } catch (IOException | RuntimeException e) {
+                recordById.clear();
+                clearIndexes();
+                loaded = false;
+                throw e;
+            }
+            if (journal != null) {
+                journal.reset();
+            }
+            loaded = true;
+            writtenVersion = ++stateVersion;
+            updateDiskStamps();
+            return null;
+        });
+        return manifest;
+    }
+
+    /**
+     * Writes the current records to {@code path}; a {@code .mdb} extension selects the binary format, anything else JSON.
+     */
+    public void exportDatabase(String path) throws IOException {
+        writeSnapshot(new File(path), openDatabase());
+    }
+
+    /**
+     * Streams the records matching {@code query} (all records if {@code null}) to a spreadsheet or data file,
+     * see {@link MusicRecordExporter}; returns the number of rows written. The ids are taken at the start,
+     * records are read chunk by chunk, so writers are not blocked for the length of the export.
+     */
+    public int exportRecords(String path, MusicQuery query, ProgressListener listener) throws IOException {
+        int[] ids = query == null ? getRecordIds() : underLoadedReadLock(() -> runQueryIds(query));
+        return new MusicRecordExporter(this).export(Paths.get(path), ids, listener);
+    }
+
+    /**
+     * Adds the records of an Excel or CSV file, see {@link MusicRecordImporter}. Rows that are invalid or whose id
+     * already exists are skipped and reported in the result; the valid ones are persisted together.
+     */
+    public ImportResult importRecords(String path, ProgressListener listener) throws IOException {
+        return new MusicRecordImporter(this).importFile(Paths.get(path), listener);
+    }
+
+    /**
+     * Replaces the database with the records stored in {@code path} (JSON or {@code .mdb}).
+     */
+    public void importDatabase(String path) throws IOException {
+        Path source = Paths.get(path);
+        List<MusicRecord> records = new ArrayList<>();
+        SnapshotFormat.forPath(source).read(source, records::add);
+        saveDatabase(records);
     }
 
     public void clearDatabase() throws IOException {
-        recordById.clear();
-        indexedFields.clear();
         saveDatabase(new ArrayList<>());
     }
 
-    private void rebuildIndexes() throws IOException {
-        rebuildIndexes(openDatabase());
+    public void deleteDatabase() throws IOException {
+        exclusively(() -> {
+            awaitCompaction();
+            if (journal != null) {
+                journal.reset();
+            }
+            Files.deleteIfExists(databaseFile.toPath());
+            recordById.clear();
+            clearIndexes();
+            loaded = false;
+            return null;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            throw new IOException("Could not unregister metrics!", e);
+        }
+        if (journal != null) {
+            exclusively(() -> {
+                awaitCompaction();
+                compactionExecutor.shutdown();
+                journal.close();
+                return null;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+
+    private <T> T underReadLock(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T underReadLock(MusicDatabaseMetrics.Operation operation, Supplier<T> action) {
+        long start = metrics.start();
+        try {
+            return underReadLock(action);
+        } finally {
+            metrics.stop(operation, start);
+        }
+    }
+
+    private <T> T underWriteLock(IoSupplier<T> action) throws IOException {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Times {@code action} including the wait for the lock.
+     */
+    private <T> T underWriteLock(MusicDatabaseMetrics.Operation operation, IoSupplier<T> action) throws IOException {
+        long start = metrics.start();
+        try {
+            return underWriteLock(action);
+        } finally {
+            metrics.stop(operation, start);
+        }
+    }
+
+    /**
+     * Runs {@code action} under the read lock once the in-memory state matches the file,
+     * loading or reloading it under the write lock first if needed.
+     */
+    private <T> T underLoadedReadLock(IoSupplier<T> action) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (loaded && !mayNeedReload()) {
+                return action.get();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return underWriteLock(() -> {
+            ensureLoaded();
+            return action.get();
+        });
+    }
+
+    /**
+     * For operations that replace the whole file: also excludes background snapshot writers.
+     * Lock order is always {@code snapshotLock} before {@code lock}.
+     */
+    private <T> T exclusively(IoSupplier<T> action) throws IOException {
+        synchronized (snapshotLock) {
+            return underWriteLock(action);
+        }
+    }
+
+    private <T> T exclusively(MusicDatabaseMetrics.Operation operation, IoSupplier<T> action) throws IOException {
+        long start = metrics.start();
+        try {
+            return exclusively(action);
+        } finally {
+            metrics.stop(operation, start);
+        }
+    }
+
+    private void replaceAll(List<MusicRecord> records) throws IOException {
+        awaitCompaction();
+        writeSnapshot(databaseFile, records);
+        if (journal != null) {
+            journal.reset();
+        }
+        rebuildIndexes(records);
+        loaded = true;
+        writtenVersion = ++stateVersion;
+        updateDiskStamps();
+    }
+
+    private void validateUpdates(List<RecordUpdate> updates) {
+        Map<Integer, Boolean> presentAfter = new HashMap<>();
+        for (RecordUpdate update : updates) {
+            int id = update.getId();
+            if (!presentAfter.getOrDefault(id, recordById.containsKey(id))) {
+                throw new IllegalArgumentException("Record not found: " + id);
+            }
+            switch (update.getField()) {
+                case "id" -> {
+                    int newId = parseNumber(update);
+                    if (newId != id) {
+                        if (presentAfter.getOrDefault(newId, recordById.containsKey(newId))) {
+                            throw new IllegalArgumentException("Record with the same ID already exists: " + newId);
+                        }
+                        presentAfter.put(id, false);
+                        presentAfter.put(newId, true);
+                    }
+                }
+                case "duration" -> parseNumber(update);
+                case "title", "artist", "album", "genre" -> {
+                }
+                default -> throw new IllegalArgumentException("Unknown field: " + update.getField());
+            }
+        }
+    }
+
+    private static int parseNumber(RecordUpdate update) {
+        try {
+            return Integer.parseInt(update.getValue().trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Field " + update.getField() + " must be a number!");
+        }
+    }
+
+    private static MusicRecord withField(MusicRecord record, String fieldName, String value) {
+        MusicRecord copy = new MusicRecord(record.getId(), record.getTitle(), record.getArtist(),
+                record.getAlbum(), record.getGenre(), record.getDuration());
+        switch (fieldName) {
+            case "id" -> copy.setId(Integer.parseInt(value.trim()));
+            case "duration" -> copy.setDuration(Integer.parseInt(value.trim()));
+            case "title" -> copy.setTitle(value);
+            case "artist" -> copy.setArtist(value);
+            case "album" -> copy.setAlbum(value);
+            default -> copy.setGenre(value);
+        }
+        return copy;
+    }
+
+    private void validateBatch(MusicRecordBatch batch) {
+        Map<Integer, Boolean> presentAfter = new HashMap<>();
+        for (MusicDatabaseJournal.Entry change : batch.getChanges()) {
+            int id = change.getId();
+            if (change.getOp() == MusicDatabaseJournal.Op.PUT) {
+                boolean present = presentAfter.getOrDefault(id, recordById.containsKey(id));
+                if (present) {
+                    throw new IllegalArgumentException("Record with the same ID already exists: " + id);
+                }
+                presentAfter.put(id, true);
+            } else {
+                presentAfter.put(id, false);
+            }
+        }
+    }
+
+    /**
+     * Writes the changes to the journal under the write lock and only then runs {@code applyChanges}, so a failed
+     * write leaves memory as it was. Returns a ticket for {@link #awaitDurable(long)}: the journal sequence number,
+     * or the in-memory state version when every change rewrites the snapshot.
+     */
+    private long append(List<MusicDatabaseJournal.Entry> changes, Runnable applyChanges) throws IOException {
+        if (journal == null) {
+            applyChanges.run();
+            metrics.changesApplied(changes.size(), 0);
+            return ++stateVersion;
+        }
+        if (pendingCompaction != null && pendingCompaction.isDone()) {
+            // Reports a failed compaction before anything new is written; its rotated log is kept and compacted later.
+            awaitCompaction();
+        }
+        long appendedBytes = journal.getAppendedBytes();
+        long seq = journal.append(changes);
+        applyChanges.run();
+        metrics.changesApplied(changes.size(), journal.getAppendedBytes() - appendedBytes);
+        // Compacting only once the journal is as large as the snapshot keeps bulk loads linear.
+        FileStamp snapshot = snapshotStamp;
+        long threshold = Math.max(COMPACTION_THRESHOLD_BYTES, snapshot == null ? 0 : snapshot.size());
+        if (journal.size() >= threshold) {
+            compactInBackground();
+        }
+        updateDiskStamps();
+        return seq;
+    }
+
+    /**
+     * Called without the write lock. A snapshot written for a later version also covers earlier tickets,
+     * so writers queued behind a running write usually return without writing again.
+     */
+    void awaitDurable(long ticket) throws IOException {
+        if (journal != null) {
+            long start = metrics.start();
+            try {
+                journal.sync(ticket);
+            } finally {
+                metrics.stop(MusicDatabaseMetrics.Operation.SYNC, start);
+            }
+            return;
+        }
+        synchronized (snapshotLock) {
+            if (writtenVersion >= ticket) {
+                return;
+            }
+            List<MusicRecord> records;
+            long version;
+            lock.readLock().lock();
+            try {
+                records = new ArrayList<>(recordById.values());
+                version = stateVersion;
+            } finally {
+                lock.readLock().unlock();
+            }
+            writeSnapshot(databaseFile, records);
+            writtenVersion = version;
+        }
+    }
+
+    private void compactInBackground() throws IOException {
+        if (pendingCompaction != null && !pendingCompaction.isDone()) {
+            return;
+        }
+        if (!journal.hasRotated()) {
+            journal.rotate();
+        }
+        List<MusicRecord> snapshot = new ArrayList<>(recordById.values());
+        pendingCompaction = compactionExecutor.submit(() -> {
+            long start = metrics.start();
+            writeSnapshot(databaseFile, snapshot);
+            journal.discardRotated();
+            metrics.compacted();
+            metrics.stop(MusicDatabaseMetrics.Operation.COMPACTION, start);
+            return null;
+        });
+    }
+
+    private void awaitCompaction() throws IOException {
+        if (pendingCompaction == null) {
+            return;
+        }
+        try {
+            pendingCompaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compaction!");
+        } catch (ExecutionException e) {
+            throw new IOException("Journal compaction failed!", e.getCause());
+        } finally {
+            pendingCompaction = null;
+        }
+    }
+
+    private boolean hasSnapshotFormat(Path file) {
+        return SnapshotFormat.forPath(file).getClass() == snapshotFormat.getClass();
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (!databaseFile.exists()) {
+            throw new FileNotFoundException("Database file not found!");
+        }
+        if (!loaded || needsReload()) {
+            reload();
+        }
+    }
+
+    /**
+     * While an own snapshot write is still pending the file is expected to lag behind memory,
+     * so it is not treated as an external change.
+     */
+    private boolean needsReload() throws IOException {
+        if (journal == null && writtenVersion < stateVersion) {
+            return false;
+        }
+        return !databaseFile.exists() || isChangedOnDisk();
+    }
+
+    /**
+     * {@link #needsReload()} for reads: trusts a check made within {@link #DISK_CHECK_INTERVAL_NANOS}, so a
+     * read does not stat the files every time. An external change is noticed up to that much later.
+     */
+    private boolean mayNeedReload() throws IOException {
+        long now = System.nanoTime();
+        if (now - lastDiskCheck < DISK_CHECK_INTERVAL_NANOS) {
+            return false;
+        }
+        if (needsReload()) {
+            return true;
+        }
+        lastDiskCheck = now;
+        return false;
+    }
+
+    /**
+     * Streams the snapshot (and the journal tail) straight into {@code recordById} and the indexes,
+     * without materializing an intermediate list.
+     */
+    private void reload() throws IOException {
+        long start = metrics.start();
+        try {
+            awaitCompaction();
+            recordById.clear();
+            clearIndexes();
+            snapshotFormat.read(databaseFile.toPath(), this::putRecord);
+            if (journal != null) {
+                replayJournal();
+            }
+            loaded = true;
+            writtenVersion = stateVersion;
+            updateDiskStamps();
+            metrics.indexesRebuilt();
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.LOAD, start);
+        }
+    }
+
+    private boolean isChangedOnDisk() throws IOException {
+        synchronized (stampLock) {
+            if (!FileStamp.of(databaseFile.toPath()).equals(snapshotStamp)) {
+                return true;
+            }
+            return journal != null && !FileStamp.of(journal.getPath()).equals(journalStamp);
+        }
+    }
+
+    private void updateDiskStamps() throws IOException {
+        synchronized (stampLock) {
+            snapshotStamp = FileStamp.of(databaseFile.toPath());
+            if (journal != null) {
+                journalStamp = FileStamp.of(journal.getPath());
+            }
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        journal.replay(this::applyEntry);
+        if (journal.hasRotated()) {
+            writeSnapshot(databaseFile, recordById.values());
+            journal.discardRotated();
+        }
+    }
+
+    /**
+     * Number of distinct keys in each field index.
+     */
+    Map<String, Integer> indexCardinality() {
+        return underReadLock(() -> {
+            Map<String, Integer> cardinality = new LinkedHashMap<>();
+            for (String field : NUMERIC_FIELDS) {
+                cardinality.put(field, numericIndexes.get(field).size());
+            }
+            for (String field : STRING_FIELDS) {
+                cardinality.put(field, indexedFields.get(field).size());
+            }
+            return cardinality;
+        });
+    }
+
+    QueryCache.Stats queryCacheStats() {
+        return queryCache.stats();
+    }
+
+    private BackupRepository.Fingerprints fingerprints() {
+        int[] ids = recordById.keys();
+        Arrays.sort(ids);
+        long[] values = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = BackupRepository.fingerprint(recordById.get(ids[i]));
+        }
+        return new BackupRepository.Fingerprints(ids, values);
+    }
+
+    /**
+     * Writes the postings of every index in key order. Keys of the field indexes are not stored: each is the
+     * field value of the first record in its postings, which also lets the loaded keys share the records' strings.
+     */
+    private void writeIndexes(DataOutputStream out) throws IOException {
+        for (String field : STRING_FIELDS) {
+            writePostings(out, indexedFields.get(field).values());
+        }
+        for (String field : NUMERIC_FIELDS) {
+            writePostings(out, numericIndexes.get(field).values());
+        }
+        for (String field : STRING_FIELDS) {
+            TokenIndex textIndex = textIndexes.get(field);
+            if (textIndex != null) {
+                textIndex.writeTo(out);
+            }
+        }
+    }
+
+    private static void writePostings(DataOutputStream out, Collection<IntPostings> postings) throws IOException {
+        out.writeInt(postings.size());
+        for (IntPostings ids : postings) {
+            ids.writeTo(out);
+        }
+    }
+
+    /**
+     * Loads indexes written by {@link #writeIndexes(DataOutputStream)} for the records already in {@code recordById}.
+     */
+    private void readIndexes(DataInputStream in) throws IOException {
+        for (MusicRecord record : recordById.values()) {
+            shareValues(record);
+        }
+        for (String field : STRING_FIELDS) {
+            readPostings(in, indexedFields.get(field), field);
+        }
+        for (String field : NUMERIC_FIELDS) {
+            readPostings(in, numericIndexes.get(field), field);
+        }
+        for (String field : STRING_FIELDS) {
+            TokenIndex textIndex = textIndexes.get(field);
+            if (textIndex != null) {
+                textIndex.readFrom(in);
+            }
+        }
+        for (String field : DURATION_TOTAL_FIELDS) {
+            Map<String, long[]> totals = durationTotals.get(field);
+            for (Map.Entry<String, IntPostings> entry : indexedFields.get(field).entrySet()) {
+                long total = 0;
+                IntPostings ids = entry.getValue();
+                for (int i = 0; i < ids.size(); i++) {
+                    total += recordById.get(ids.get(i)).getDuration();
+                }
+                totals.put(entry.getKey(), new long[]{total});
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> void readPostings(DataInputStream in, TreeMap<K, IntPostings> index, String fieldName) throws IOException {
+        int count = in.readInt();
+        List<K> keys = new ArrayList<>(count);
+        List<IntPostings> postings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            IntPostings ids = IntPostings.readFrom(in);
+            MusicRecord first = ids.isEmpty() ? null : recordById.get(ids.get(0));
+            if (first == null) {
+                throw new IOException("Backup index does not match its records!");
+            }
+            keys.add((K) fieldValue(first, fieldName));
+            postings.add(ids);
+        }
+        SortedEntries.putAll(index, keys, postings);
+    }
+
+    private void applyEntry(MusicDatabaseJournal.Entry entry) {
+        if (entry.getOp() == MusicDatabaseJournal.Op.PUT) {
+            putRecord(entry.getRecord());
+        } else {
+            MusicRecord removed = recordById.remove(entry.getId());
+            if (removed != null) {
+                deindexRecord(removed);
+            }
+        }
+    }
+
+    /**
+     * Writes to a temporary file and moves it into place. For the database file the new stamp is recorded
+     * together with the move, so a concurrent {@link #isChangedOnDisk()} never mistakes the own snapshot,
+     * e.g. one written by a background compaction, for an external change.
+     */
+    private void writeSnapshot(File file, Collection<MusicRecord> records) throws IOException {
+        long start = metrics.start();
+        try {
+            Path target = file.toPath().toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            SnapshotFormat.forPath(target).write(temp, records);
+            synchronized (stampLock) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (target.equals(databaseFile.toPath().toAbsolutePath())) {
+                    snapshotStamp = FileStamp.of(target);
+                }
+            }
+            metrics.snapshotWritten(target);
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.SNAPSHOT, start);
+        }
+    }
+
+    private void putRecord(MusicRecord record) {
+        MusicRecord previous = recordById.put(record.getId(), record);
+        if (previous != null) {
+            deindexRecord(previous);
+        }
+        indexRecord(record);
     }
 
     private void rebuildIndexes(List<MusicRecord> records) {
-        recordById.clear();
-        indexedFields.clear();
-        for (MusicRecord record : records) {
-            recordById.put(record.getId(), record);
-            indexRecord(record);
+        long start = metrics.start();
+        try {
+            recordById.clear();
+            clearIndexes();
+            for (MusicRecord record : records) {
+                recordById.put(record.getId(), record);
+                indexRecord(record);
+            }
+            metrics.indexesRebuilt();
+        } finally {
+            metrics.stop(MusicDatabaseMetrics.Operation.REBUILD_INDEXES, start);
         }
     }
 
     private void indexRecord(MusicRecord record) {
-        indexField("id", String.valueOf(record.getId()), record);
-        indexField("duration", String.valueOf(record.getDuration()), record);
+        shareValues(record);
+        indexNumber("id", record.getId(), record);
+        indexNumber("duration", record.getDuration(), record);
         indexField("title", record.getTitle(), record);
         indexField("artist", record.getArtist(), record);
         indexField("album", record.getAlbum(), record);
         indexField("genre", record.getGenre(), record);
+        textIndexes.get("title").add(record.getId(), record.getTitle());
+        textIndexes.get("artist").add(record.getId(), record.getArtist());
+        textIndexes.get("album").add(record.getId(), record.getAlbum());
     }
 
     private void deindexRecord(MusicRecord record) {
-        deindexField("id", String.valueOf(record.getId()), record);
-        deindexField("duration", String.valueOf(record.getDuration()), record);
+        deindexNumber("id", record.getId(), record);
+        deindexNumber("duration", record.getDuration(), record);
         deindexField("title", record.getTitle(), record);
         deindexField("artist", record.getArtist(), record);
         deindexField("album", record.getAlbum(), record);
         deindexField("genre", record.getGenre(), record);
+        textIndexes.get("title").remove(record.getId(), record.getTitle());
+        textIndexes.get("artist").remove(record.getId(), record.getArtist());
+        textIndexes.get("album").remove(record.getId(), record.getAlbum());
+    }
+
+    /**
+     * Moves a record whose id is unchanged from the old to the new value of one field.
+     */
+    private void reindexField(MusicRecord current, MusicRecord updated, String fieldName) {
+        if (fieldName.equals("duration")) {
+            deindexNumber(fieldName, current.getDuration(), current);
+            indexNumber(fieldName, updated.getDuration(), updated);
+            for (String field : DURATION_TOTAL_FIELDS) {
+                String value = (String) fieldValue(updated, field);
+                if (value != null) {
+                    durationTotals.get(field).get(value)[0] += updated.getDuration() - current.getDuration();
+                }
+            }
+            return;
+        }
+        String oldValue = (String) fieldValue(current, fieldName);
+        deindexField(fieldName, oldValue, current);
+        shareValues(updated);
+        String newValue = (String) fieldValue(updated, fieldName);
+        indexField(fieldName, newValue, updated);
+        TokenIndex textIndex = textIndexes.get(fieldName);
+        if (textIndex != null) {
+            textIndex.remove(current.getId(), oldValue);
+            textIndex.add(updated.getId(), newValue);
+        }
+    }
+
+    private void shareValues(MusicRecord record) {
+        record.setArtist(share(record.getArtist()));
+        record.setAlbum(share(record.getAlbum()));
+        record.setGenre(share(record.getGenre()));
+    }
+
+    /**
+     * Returns the one shared instance of an artist, album or genre value, so that thousands of records
+     * by the same artist reference a single string. The pool holds exactly the values still indexed.
+     */
+    private String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = sharedStrings.putIfAbsent(value, value);
+        return shared == null ? value : shared;
     }
 
     private void indexField(String fieldName, String value, MusicRecord record) {
-        indexedFields.putIfAbsent(fieldName, new TreeMap<>());
-        indexedFields.get(fieldName).computeIfAbsent(value, k -> new ArrayList<>()).add(record);
+        queryCache.invalidate(fieldName, value);
+        if (value != null) {
+            addPosting(indexedFields.get(fieldName), value, record.getId());
+            Map<String, long[]> totals = durationTotals.get(fieldName);
+            if (totals != null) {
+                totals.computeIfAbsent(value, v -> new long[1])[0] += record.getDuration();
+            }
+        }
     }
 
     private void deindexField(String fieldName, String value, MusicRecord record) {
-        TreeMap<String, List<MusicRecord>> fieldIndex = indexedFields.get(fieldName);
-        if (fieldIndex != null) {
-            List<MusicRecord> records = fieldIndex.get(value);
-            if (records != null) {
-                records.remove(record);
-                if (records.isEmpty()) {
-                    fieldIndex.remove(value);
+        queryCache.invalidate(fieldName, value);
+        if (value == null) {
+            return;
+        }
+        boolean dropped = removePosting(indexedFields.get(fieldName), value, record.getId());
+        Map<String, long[]> totals = durationTotals.get(fieldName);
+        if (totals != null) {
+            if (dropped) {
+                totals.remove(value);
+            } else {
+                totals.get(value)[0] -= record.getDuration();
+            }
+        }
+        if (dropped && SHARED_FIELDS.contains(fieldName) && !isSharedValueIndexed(value)) {
+            sharedStrings.remove(value);
+        }
+    }
+
+    private boolean isSharedValueIndexed(String value) {
+        for (String field : SHARED_FIELDS) {
+            if (indexedFields.get(field).containsKey(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void indexNumber(String fieldName, int value, MusicRecord record) {
+        queryCache.invalidate(fieldName, value);
+        addPosting(numericIndexes.get(fieldName), value, record.getId());
+    }
+
+    private void deindexNumber(String fieldName, int value, MusicRecord record) {
+        queryCache.invalidate(fieldName, value);
+        removePosting(numericIndexes.get(fieldName), value, record.getId());
+    }
+
+    private static <K> void addPosting(TreeMap<K, IntPostings> fieldIndex, K key, int id) {
+        fieldIndex.computeIfAbsent(key, k -> new IntPostings()).add(id);
+    }
+
+    /**
+     * Returns {@code true} if the key lost its last posting and was dropped from the index.
+     */
+    private static <K> boolean removePosting(TreeMap<K, IntPostings> fieldIndex, K key, int id) {
+        IntPostings ids = fieldIndex.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            fieldIndex.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    private void clearIndexes() {
+        queryCache.clear();
+        durationTotals.values().forEach(Map::clear);
+        sharedStrings.clear();
+        indexedFields.values().forEach(TreeMap::clear);
+        numericIndexes.values().forEach(TreeMap::clear);
+        textIndexes.values().forEach(TokenIndex::clear);
+    }
+
+    private boolean isIndexed(String fieldName) {
+        return indexedFields.containsKey(fieldName) || numericIndexes.containsKey(fieldName);
+    }
+
+    /**
+     * Exact-match postings for {@code value}; numeric fields parse the value so that {@code "180"} finds duration 180.
+     */
+    private IntPostings postings(String fieldName, String value) {
+        if (value == null) {
+            return NO_POSTINGS;
+        }
+        TreeMap<Integer, IntPostings> numericIndex = numericIndexes.get(fieldName);
+        if (numericIndex != null) {
+            try {
+                return numericIndex.getOrDefault(Integer.parseInt(value.trim()), NO_POSTINGS);
+            } catch (NumberFormatException e) {
+                return NO_POSTINGS;
+            }
+        }
+        return indexedFields.get(fieldName).getOrDefault(value, NO_POSTINGS);
+    }
+
+    private Collection<IntPostings> prefixPostings(String fieldName, String prefix) {
+        List<IntPostings> result = new ArrayList<>();
+        for (Map.Entry<String, IntPostings> entry : indexedFields.get(fieldName).tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * {@link TreeMap#subMap} rejects {@code min > max}; such a range is simply empty.
+     */
+    private Collection<IntPostings> rangePostings(String fieldName, int min, int max) {
+        if (min > max) {
+            return Collections.emptyList();
+        }
+        return numericIndexes.get(fieldName).subMap(min, true, max, true).values();
+    }
+
+    private Collection<IntPostings> conditionPostings(MusicQuery.Condition condition) {
+        return switch (condition.getKind()) {
+            case EQUALS -> Collections.singletonList(postings(condition.getField(), condition.getValue()));
+            case RANGE -> rangePostings(condition.getField(), condition.getMin(), condition.getMax());
+            case PREFIX -> prefixPostings(condition.getField(), condition.getValue());
+        };
+    }
+
+    private void validateCondition(MusicQuery.Condition condition) {
+        String field = condition.getField();
+        if (!isIndexed(field)) {
+            throw new IllegalArgumentException("Field name not indexed: " + field);
+        }
+        if (condition.getKind() == MusicQuery.Kind.RANGE && !numericIndexes.containsKey(field)) {
+            throw new IllegalArgumentException("Range conditions are only supported on id and duration!");
+        }
+        if (condition.getKind() == MusicQuery.Kind.PREFIX && !indexedFields.containsKey(field)) {
+            throw new IllegalArgumentException("Prefix conditions are only supported on text fields!");
+        }
+        if (condition.getKind() != MusicQuery.Kind.RANGE && condition.getValue() == null) {
+            throw new IllegalArgumentException("Condition value must not be null!");
+        }
+    }
+
+    /**
+     * Exact for equality; ranges assume keys are spread evenly between the smallest and largest key;
+     * prefixes sum the first postings and give up (estimate everything) on very broad prefixes.
+     * Zero is always exact: no key lies in the range (or {@code min > max}), or no postings match.
+     */
+    private long estimateRows(MusicQuery.Condition condition) {
+        switch (condition.getKind()) {
+            case EQUALS -> {
+                return postings(condition.getField(), condition.getValue()).size();
+            }
+            case RANGE -> {
+                TreeMap<Integer, IntPostings> fieldIndex = numericIndexes.get(condition.getField());
+                if (fieldIndex.isEmpty()) {
+                    return 0;
+                }
+                long first = fieldIndex.firstKey();
+                long last = fieldIndex.lastKey();
+                long low = Math.max(condition.getMin(), first);
+                long high = Math.min(condition.getMax(), last);
+                if (low > high) {
+                    return 0;
+                }
+                return Math.max(1, recordById.size() * (high - low + 1) / (last - first + 1));
+            }
+            default -> {
+                long rows = 0;
+                int keys = 0;
+                for (Map.Entry<String, IntPostings> entry
+                        : indexedFields.get(condition.getField()).tailMap(condition.getValue(), true).entrySet()) {
+                    if (!entry.getKey().startsWith(condition.getValue())) {
+                        return rows;
+                    }
+                    if (++keys > PREFIX_ESTIMATE_KEYS) {
+                        return recordById.size();
+                    }
+                    rows += entry.getValue().size();
+                }
+                return rows;
+            }
+        }
+    }
+
+    private int[] matchingIds(MusicQuery.Condition condition) {
+        Collection<IntPostings> postings = conditionPostings(condition);
+        int size = 0;
+        for (IntPostings posting : postings) {
+            size += posting.size();
+        }
+        int[] ids = new int[size];
+        int offset = 0;
+        for (IntPostings posting : postings) {
+            posting.copyTo(ids, offset);
+            offset += posting.size();
+        }
+        if (postings.size() > 1) {
+            Arrays.sort(ids);
+        }
+        return ids;
+    }
+
+    private int[] filter(int[] ids, MusicQuery.Condition condition) {
+        int[] result = new int[ids.length];
+        int size = 0;
+        for (int id : ids) {
+            if (condition.matches(recordById.get(id))) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private List<MusicRecord> collect(Collection<IntPostings> postings, int limit) {
+        List<MusicRecord> result = new ArrayList<>();
+        for (IntPostings ids : postings) {
+            for (int i = 0; i < ids.size(); i++) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                result.add(recordById.get(ids.get(i)));
+            }
+        }
+        return result;
+    }
+
+    private int[] sortByComparison(int[] ids, String fieldName, boolean descending) {
+        Comparator<MusicRecord> byField = fieldComparator(fieldName);
+        Comparator<MusicRecord> order = (descending ? byField.reversed() : byField)
+                .thenComparingInt(MusicRecord::getId);
+        return Arrays.stream(ids)
+                .mapToObj(recordById::get)
+                .filter(Objects::nonNull)
+                .sorted(order)
+                .mapToInt(MusicRecord::getId)
+                .toArray();
+    }
+
+    private int[] sortByIndex(int[] ids, String fieldName, boolean descending) {
+        int[] wanted = ids.clone();
+        Arrays.sort(wanted);
+        NavigableMap<?, IntPostings> fieldIndex = numericIndexes.containsKey(fieldName)
+                ? numericIndexes.get(fieldName) : indexedFields.get(fieldName);
+        boolean everyRecord = wanted.length == recordById.size() && Arrays.stream(wanted).distinct().count() == wanted.length;
+        int[] indexed = new int[wanted.length];
+        int size = 0;
+        for (IntPostings posting : (descending ? fieldIndex.descendingMap() : fieldIndex).values()) {
+            if (everyRecord) {
+                posting.copyTo(indexed, size);
+                size += posting.size();
+                continue;
+            }
+            for (int i = 0; i < posting.size(); i++) {
+                if (Arrays.binarySearch(wanted, posting.get(i)) >= 0) {
+                    indexed[size++] = posting.get(i);
                 }
             }
         }
+        int[] withoutValue = Arrays.stream(wanted)
+                .filter(id -> recordById.containsKey(id) && fieldValue(recordById.get(id), fieldName) == null)
+                .toArray();
+        int[] result = new int[size + withoutValue.length];
+        System.arraycopy(withoutValue, 0, result, descending ? 0 : size, withoutValue.length);
+        System.arraycopy(indexed, 0, result, descending ? withoutValue.length : 0, size);
+        return result;
+    }
+
+    private static Comparator<MusicRecord> fieldComparator(String fieldName) {
+        if (NUMERIC_FIELDS.contains(fieldName)) {
+            return Comparator.comparingInt(record -> (Integer) fieldValue(record, fieldName));
+        }
+        return Comparator.comparing(record -> (String) fieldValue(record, fieldName),
+                Comparator.nullsLast(Comparator.naturalOrder()));
+    }
+
+    private static Object fieldValue(MusicRecord record, String fieldName) {
+        return switch (fieldName) {
+            case "id" -> record.getId();
+            case "duration" -> record.getDuration();
+            case "title" -> record.getTitle();
+            case "artist" -> record.getArtist();
+            case "album" -> record.getAlbum();
+            case "genre" -> record.getGenre();
+            default -> throw new IllegalArgumentException("Unknown field: " + fieldName);
+        };
+    }
+
+    private record FileStamp(long modified, long size) {
+        static FileStamp of(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return new FileStamp(-1, -1);
+            }
+            return new FileStamp(Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+        }
     }
 }
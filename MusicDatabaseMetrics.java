@@ -0,0 +1,235 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms, counters and index sizes of one {@link MusicDatabaseManager}. Recording is off by default
+ * and switched on with {@code -Dmusicdb.metrics=true} or {@link #setEnabled(boolean)}; while off, every hook is a
+ * single volatile read. {@link #register()} publishes the metrics as an MXBean and lets JFR recordings sample
+ * the index sizes; timed operations are emitted as {@code musicdb.Operation} events when a recording enables them.
+ */
+public class MusicDatabaseMetrics implements MusicDatabaseMetricsMXBean {
+    public enum Operation {
+        OPEN, LOAD, SAVE, REBUILD_INDEXES, SEARCH, RANGE_SEARCH, PREFIX_SEARCH, TEXT_SEARCH, QUERY, SORT,
+        AGGREGATE, WRITE, SYNC, SNAPSHOT, COMPACTION, BACKUP, RESTORE
+    }
+
+    @Name("musicdb.Operation")
+    @Label("Music Database Operation")
+    @Category("Music Database")
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Database")
+        String database;
+        @Label("Operation")
+        String operation;
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("musicdb.IndexCardinality")
+    @Label("Music Database Index Cardinality")
+    @Description("Number of distinct keys in a field index")
+    @Category("Music Database")
+    @Period("60 s")
+    @StackTrace(false)
+    static class IndexCardinalityEvent extends Event {
+        @Label("Database")
+        String database;
+        @Label("Field")
+        String field;
+        @Label("Keys")
+        int keys;
+    }
+
+    private final MusicDatabaseManager manager;
+    private final String database;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LongAdder changesApplied = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder snapshotsWritten = new LongAdder();
+    private final LongAdder indexRebuilds = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private volatile boolean enabled = Boolean.getBoolean("musicdb.metrics");
+    private ObjectName objectName;
+    private Runnable cardinalityHook;
+
+    MusicDatabaseMetrics(MusicDatabaseManager manager, String database) {
+        this.manager = manager;
+        this.database = database;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Publishes these metrics as {@code MusicDatabase:type=Metrics,name="<database>"} and registers the periodic
+     * index cardinality event. Returns the MXBean name.
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (objectName == null) {
+            ObjectName name = new ObjectName("MusicDatabase:type=Metrics,name=" + ObjectName.quote(database));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            cardinalityHook = this::emitCardinality;
+            FlightRecorder.addPeriodicEvent(IndexCardinalityEvent.class, cardinalityHook);
+            objectName = name;
+        }
+        return objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            FlightRecorder.removePeriodicEvent(cardinalityHook);
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            cardinalityHook = null;
+            objectName = null;
+        }
+    }
+
+    /**
+     * Start time to pass to {@link #stop(Operation, long)}, or 0 while recording is off.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void stop(Operation operation, long start) {
+        if (start == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        latencies.get(operation).record(elapsed);
+        OperationEvent event = new OperationEvent();
+        if (event.isEnabled()) {
+            event.database = database;
+            event.operation = operation.name();
+            event.elapsed = elapsed;
+            event.commit();
+        }
+    }
+
+    void changesApplied(int changes, long bytes) {
+        if (enabled) {
+            changesApplied.add(changes);
+            bytesWritten.add(bytes);
+        }
+    }
+
+    void snapshotWritten(Path file) throws IOException {
+        if (enabled) {
+            snapshotsWritten.increment();
+            bytesWritten.add(Files.size(file));
+        }
+    }
+
+    void indexesRebuilt() {
+        if (enabled) {
+            indexRebuilds.increment();
+        }
+    }
+
+    void compacted() {
+        if (enabled) {
+            compactions.increment();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getRecordCount() {
+        return manager.getRecordCount();
+    }
+
+    @Override
+    public long getChangesApplied() {
+        return changesApplied.sum();
+    }
+
+    /**
+     * Bytes of journal frames and snapshot files written while recording was on.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getSnapshotsWritten() {
+        return snapshotsWritten.sum();
+    }
+
+    @Override
+    public long getIndexRebuilds() {
+        return indexRebuilds.sum();
+    }
+
+    @Override
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    @Override
+    public Map<String, Integer> getIndexCardinality() {
+        return manager.indexCardinality();
+    }
+
+    @Override
+    public QueryCache.Stats getQueryCache() {
+        return manager.queryCacheStats();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Summary> getLatencies() {
+        Map<String, LatencyHistogram.Summary> result = new LinkedHashMap<>();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().summary());
+        }
+        return result;
+    }
+
+    public LatencyHistogram.Summary getLatency(Operation operation) {
+        return latencies.get(operation).summary();
+    }
+
+    @Override
+    public void resetLatencies() {
+        latencies.values().forEach(LatencyHistogram::reset);
+    }
+
+    private void emitCardinality() {
+        for (Map.Entry<String, Integer> entry : manager.indexCardinality().entrySet()) {
+            IndexCardinalityEvent event = new IndexCardinalityEvent();
+            event.database = database;
+            event.field = entry.getKey();
+            event.keys = entry.getValue();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import java.util.Map;
+
+/**
+ * JMX view of {@link MusicDatabaseMetrics}. Latencies are in nanoseconds and keyed by operation name.
+ */
+public interface MusicDatabaseMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getRecordCount();
+
+    long getChangesApplied();
+
+    long getBytesWritten();
+
+    long getSnapshotsWritten();
+
+    long getIndexRebuilds();
+
+    long getCompactions();
+
+    /**
+     * Number of distinct keys in each field index.
+     */
+    Map<String, Integer> getIndexCardinality();
+
+    /**
+     * Hit rate and size of the query result cache; counted whether or not recording is enabled.
+     */
+    QueryCache.Stats getQueryCache();
+
+    Map<String, LatencyHistogram.Summary> getLatencies();
+
+    /**
+     * Clears the latency histograms; counters keep running.
+     */
+    void resetLatencies();
+}
@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs {@link MusicDatabaseManager} calls on virtual threads so that callers such as the Swing GUI never block
+ * on file I/O. Results are delivered through {@link CompletableFuture}s; long tasks report progress and stop
+ * at the next checkpoint when their future is cancelled. Edits queued within {@link #SAVE_DELAY_MILLIS} of each
+ * other are applied with a single {@link MusicDatabaseManager#updateRecords(List)} call.
+ */
+public class MusicDatabaseService implements Closeable {
+    static final long SAVE_DELAY_MILLIS = 300;
+
+    private final MusicDatabaseManager dbManager;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Executor saveExecutor = CompletableFuture.delayedExecutor(SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS, executor);
+    private final List<PendingEdit> pendingEdits = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private boolean flushScheduled;
+
+    @FunctionalInterface
+    private interface IoTask<T> {
+        T run() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface CancellableTask<T> {
+        T run(BooleanSupplier cancelled) throws Exception;
+    }
+
+    private record PendingEdit(RecordUpdate update, CompletableFuture<Void> done) {
+    }
+
+    public MusicDatabaseService(MusicDatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    public CompletableFuture<Void> createDatabase() {
+        return run(() -> {
+            dbManager.createDatabase();
+            return null;
+        });
+    }
+
+    public CompletableFuture<int[]> getRecordIds() {
+        return run(dbManager::getRecordIds);
+    }
+
+    public CompletableFuture<MusicRecord> getRecord(int id) {
+        return run(() -> dbManager.getRecord(id));
+    }
+
+    public CompletableFuture<List<MusicRecord>> getRecords(int[] ids, int from, int to) {
+        return run(() -> dbManager.getRecords(ids, from, to));
+    }
+
+    public CompletableFuture<Void> addRecord(MusicRecord record) {
+        return run(() -> {
+            dbManager.addRecord(record);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteRecordByKey(int id) {
+        return run(() -> {
+            dbManager.deleteRecordByKey(id);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteRecordByField(String fieldName, String value) {
+        return run(() -> {
+            dbManager.deleteRecordByField(fieldName, value);
+            return null;
+        });
+    }
+
+    public CompletableFuture<int[]> sortIds(int[] ids, String fieldName, boolean descending) {
+        return run(() -> dbManager.sortIds(ids, fieldName, descending));
+    }
+
+    public CompletableFuture<List<MusicRecord>> searchByField(String fieldName, String value) {
+        return run(() -> dbManager.searchByField(fieldName, value));
+    }
+
+    public CompletableFuture<List<MusicRecord>> searchText(String query, int limit) {
+        return run(() -> dbManager.searchText(query, limit));
+    }
+
+    public CompletableFuture<Map<String, Integer>> countByField(String fieldName) {
+        return run(() -> dbManager.countByField(fieldName));
+    }
+
+    public CompletableFuture<Map<String, Long>> totalDurationByField(String fieldName) {
+        return run(() -> dbManager.totalDurationByField(fieldName));
+    }
+
+    public CompletableFuture<Void> backupDatabase(String backupPath) {
+        return run(() -> {
+            dbManager.backupDatabase(backupPath);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> restoreDatabase(String backupPath) {
+        return run(() -> {
+            dbManager.restoreDatabase(backupPath);
+            return null;
+        });
+    }
+
+    public CompletableFuture<BackupManifest> backupIncremental(String backupDir) {
+        return run(() -> dbManager.backupIncremental(backupDir));
+    }
+
+    public CompletableFuture<BackupManifest> restoreBackup(String backupDir, Instant pointInTime) {
+        return run(() -> dbManager.restoreBackup(backupDir, pointInTime));
+    }
+
+    public CompletableFuture<Void> clearDatabase() {
+        return run(() -> {
+            dbManager.clearDatabase();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteDatabase() {
+        return run(() -> {
+            dbManager.deleteDatabase();
+            return null;
+        });
+    }
+
+    /**
+     * Writes the records matching {@code query} (all if {@code null}) to an Excel, CSV or {@code .mdb} file,
+     * see {@link MusicDatabaseManager#exportRecords}. Cancelling the returned future stops the export after
+     * the current chunk and leaves no file behind.
+     */
+    public CompletableFuture<Integer> exportRecords(String filePath, MusicQuery query, ProgressListener listener) {
+        return runCancellable(cancelled -> dbManager.exportRecords(filePath, query, (done, total) -> {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Export cancelled!");
+            }
+            listener.progress(done, total);
+        }));
+    }
+
+    /**
+     * Adds the records of an Excel or CSV file, see {@link MusicDatabaseManager#importRecords}. Cancelling the
+     * returned future stops the import after the current chunk; chunks already imported are kept.
+     */
+    public CompletableFuture<ImportResult> importRecords(String filePath, ProgressListener listener) {
+        return runCancellable(cancelled -> dbManager.importRecords(filePath, (done, total) -> {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException("Import cancelled!");
+            }
+            listener.progress(done, total);
+        }));
+    }
+
+    /**
+     * Queues a change of one field, see {@link MusicDatabaseManager#updateRecord(int, String, String)}.
+     * Edits arriving within {@link #SAVE_DELAY_MILLIS} are applied together and persisted with one write;
+     * each returned future completes when its edit is durable. A record whose id was changed by an earlier
+     * queued edit is still found under its old id.
+     */
+    public CompletableFuture<Void> editRecord(int id, String fieldName, String value) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (pendingEdits) {
+            pendingEdits.add(new PendingEdit(new RecordUpdate(id, fieldName, value), done));
+            if (!flushScheduled) {
+                flushScheduled = true;
+                saveExecutor.execute(this::flushEdits);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Writes any queued edits and stops accepting work; waits for running tasks to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        flushEdits();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushEdits() {
+        synchronized (flushLock) {
+            List<PendingEdit> edits;
+            synchronized (pendingEdits) {
+                edits = new ArrayList<>(pendingEdits);
+                pendingEdits.clear();
+                flushScheduled = false;
+            }
+            if (edits.isEmpty()) {
+                return;
+            }
+            List<RecordUpdate> updates = resolveRenames(edits);
+            try {
+                dbManager.updateRecords(updates);
+                edits.forEach(pending -> pending.done().complete(null));
+            } catch (IllegalArgumentException e) {
+                // One edit was rejected; apply the rest one by one so only the bad ones fail.
+                for (int i = 0; i < edits.size(); i++) {
+                    try {
+                        dbManager.updateRecords(Collections.singletonList(updates.get(i)));
+                        edits.get(i).done().complete(null);
+                    } catch (Exception single) {
+                        edits.get(i).done().completeExceptionally(single);
+                    }
+                }
+            } catch (Exception e) {
+                edits.forEach(pending -> pending.done().completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Readdresses edits queued by id before an earlier queued edit of the same record changed that id.
+     */
+    private static List<RecordUpdate> resolveRenames(List<PendingEdit> edits) {
+        Map<Integer, Integer> renamedTo = new HashMap<>();
+        List<RecordUpdate> updates = new ArrayList<>(edits.size());
+        for (PendingEdit pending : edits) {
+            RecordUpdate update = pending.update();
+            int id = renamedTo.getOrDefault(update.getId(), update.getId());
+            updates.add(new RecordUpdate(id, update.getField(), update.getValue()));
+            if (update.getField().equals("id")) {
+                try {
+                    int newId = Integer.parseInt(update.getValue().trim());
+                    renamedTo.put(update.getId(), newId);
+                    renamedTo.replaceAll((from, to) -> to == id ? newId : to);
+                } catch (NullPointerException | NumberFormatException e) {
+                    // rejected by the manager
+                }
+            }
+        }
+        return updates;
+    }
+
+    private <T> CompletableFuture<T> run(IoTask<T> task) {
+        return runCancellable(cancelled -> task.run());
+    }
+
+    private <T> CompletableFuture<T> runCancellable(CancellableTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.run(future::isCancelled));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
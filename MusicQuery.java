@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conjunction of conditions over {@link MusicRecord} fields, executed by {@link MusicDatabaseManager#query(MusicQuery)}:
+ * <pre>new MusicQuery().eq("genre", "Jazz").eq("artist", "X").between("duration", 120, 300)</pre>
+ */
+public class MusicQuery {
+    public enum Kind { EQUALS, RANGE, PREFIX }
+
+    public static final class Condition {
+        private final Kind kind;
+        private final String field;
+        private final String value;
+        private final int min;
+        private final int max;
+        /** {@code value} parsed the way the numeric indexes parse it; null if it is not an integer. */
+        private final Integer number;
+
+        private Condition(Kind kind, String field, String value, int min, int max) {
+            this.kind = kind;
+            this.field = field;
+            this.value = value;
+            this.min = min;
+            this.max = max;
+            this.number = kind == Kind.EQUALS ? parseNumber(value) : null;
+        }
+
+        private static Integer parseNumber(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+        public String getField() {
+            return field;
+        }
+        public String getValue() {
+            return value;
+        }
+        public int getMin() {
+            return min;
+        }
+        public int getMax() {
+            return max;
+        }
+
+        public boolean matches(MusicRecord record) {
+            switch (field) {
+                case "id" -> {
+                    return matchesNumber(record.getId());
+                }
+                case "duration" -> {
+                    return matchesNumber(record.getDuration());
+                }
+                case "title" -> {
+                    return matchesText(record.getTitle());
+                }
+                case "artist" -> {
+                    return matchesText(record.getArtist());
+                }
+                case "album" -> {
+                    return matchesText(record.getAlbum());
+                }
+                case "genre" -> {
+                    return matchesText(record.getGenre());
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        private boolean matchesNumber(int number) {
+            if (kind == Kind.RANGE) {
+                return number >= min && number <= max;
+            }
+            return this.number != null && this.number == number;
+        }
+
+        private boolean matchesText(String text) {
+            if (text == null) {
+                return false;
+            }
+            return kind == Kind.PREFIX ? text.startsWith(value) : text.equals(value);
+        }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case EQUALS -> field + " = '" + value + "'";
+                case RANGE -> field + " BETWEEN " + min + " AND " + max;
+                case PREFIX -> field + " STARTS WITH '" + value + "'";
+            };
+        }
+    }
+
+    private final List<Condition> conditions = new ArrayList<>();
+
+    public MusicQuery eq(String field, String value) {
+        conditions.add(new Condition(Kind.EQUALS, field, value, 0, 0));
+        return this;
+    }
+
+    public MusicQuery between(String field, int min, int max) {
+        conditions.add(new Condition(Kind.RANGE, field, null, min, max));
+        return this;
+    }
+
+    public MusicQuery prefix(String field, String prefix) {
+        conditions.add(new Condition(Kind.PREFIX, field, prefix, 0, 0));
+        return this;
+    }
+
+    public List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+}
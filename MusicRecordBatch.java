@@ -0,0 +1,33 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered set of adds and deletes applied by {@link MusicDatabaseManager#apply(MusicRecordBatch)}
+ * as one unit: validated up front, indexed incrementally and persisted once.
+ */
+public class MusicRecordBatch {
+    private final List<MusicDatabaseJournal.Entry> changes = new ArrayList<>();
+
+    public MusicRecordBatch add(MusicRecord record) {
+        changes.add(MusicDatabaseJournal.Entry.put(record));
+        return this;
+    }
+
+    public MusicRecordBatch delete(int id) {
+        changes.add(MusicDatabaseJournal.Entry.delete(id));
+        return this;
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    List<MusicDatabaseJournal.Entry> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+}
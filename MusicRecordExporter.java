@@ -0,0 +1,249 @@
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams records to Excel ({@code .xlsx}), CSV ({@code .csv}) or the columnar binary format ({@code .mdb}).
+ * Records are fetched from the manager in chunks of {@value #CHUNK_SIZE} ids and written in order. Only CSV
+ * formats the lines of a chunk in parallel: Excel cells can only be created on the thread that writes the
+ * workbook, and {@code .mdb} only copies values into its columns, so neither has work worth splitting.
+ * Excel keeps only {@value #ROW_WINDOW} rows in memory and CSV none, so memory does not grow with the
+ * catalogue; {@code .mdb} needs every column before writing and is the exception, though it keeps only the
+ * encoded columns, not the records. The target file appears only once the export is complete.
+ */
+public class MusicRecordExporter {
+    static final int CHUNK_SIZE = 4096;
+    static final int ROW_WINDOW = 100;
+    private static final int EXCEL_MAX_ROWS = 1_048_576;
+    private static final String[] COLUMN_NAMES = {"ID", "Title", "Artist", "Album", "Genre", "Duration"};
+
+    public enum Format {
+        XLSX, CSV, MDB;
+
+        /**
+         * {@code .csv} and {@code .mdb} select those formats; anything else is written as Excel.
+         */
+        public static Format forPath(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(BinarySnapshotFormat.EXTENSION)) {
+                return MDB;
+            }
+            return XLSX;
+        }
+    }
+
+    /**
+     * Output side of the pipeline: {@link #prepare} runs on several threads if {@link #isParallel()},
+     * {@link #write} in row order.
+     */
+    private interface RowSink<T> extends Closeable {
+        T prepare(MusicRecord record);
+
+        default boolean isParallel() {
+            return false;
+        }
+
+        void write(T row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private final MusicDatabaseManager dbManager;
+
+    public MusicRecordExporter(MusicDatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Writes the records with the given ids, in that order, and returns the number of rows written.
+     * Ids of records deleted in the meantime are skipped.
+     */
+    public int export(Path target, int[] ids, ProgressListener listener) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        int written;
+        try {
+            try (RowSink<?> sink = openSink(Format.forPath(absolute), temp, ids.length)) {
+                written = writeAll(sink, ids, listener);
+                sink.finish();
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return written;
+    }
+
+    private <T> int writeAll(RowSink<T> sink, int[] ids, ProgressListener listener) throws IOException {
+        int written = 0;
+        listener.progress(0, ids.length);
+        for (int from = 0; from < ids.length; from += CHUNK_SIZE) {
+            int to = Math.min(ids.length, from + CHUNK_SIZE);
+            List<MusicRecord> records = dbManager.getRecords(ids, from, to);
+            List<T> rows = (sink.isParallel() ? records.parallelStream() : records.stream()).map(sink::prepare).toList();
+            for (T row : rows) {
+                sink.write(row);
+            }
+            written += rows.size();
+            listener.progress(to, ids.length);
+        }
+        return written;
+    }
+
+    private static RowSink<?> openSink(Format format, Path file, int rows) throws IOException {
+        return switch (format) {
+            case XLSX -> new ExcelSink(file);
+            case CSV -> new CsvSink(file);
+            case MDB -> new BinarySink(file, rows);
+        };
+    }
+
+    private static final class ExcelSink implements RowSink<MusicRecord> {
+        private final Path file;
+        private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        private Sheet sheet;
+        private int sheets;
+        private int rowIndex;
+
+        ExcelSink(Path file) {
+            this.file = file;
+            workbook.setCompressTempFiles(true);
+            nextSheet();
+        }
+
+        @Override
+        public MusicRecord prepare(MusicRecord record) {
+            return record;
+        }
+
+        @Override
+        public void write(MusicRecord record) {
+            if (rowIndex == EXCEL_MAX_ROWS) {
+                nextSheet();
+            }
+            Row row = sheet.createRow(rowIndex++);
+            row.createCell(0).setCellValue(record.getId());
+            row.createCell(1).setCellValue(record.getTitle());
+            row.createCell(2).setCellValue(record.getArtist());
+            row.createCell(3).setCellValue(record.getAlbum());
+            row.createCell(4).setCellValue(record.getGenre());
+            row.createCell(5).setCellValue(record.getDuration());
+        }
+
+        @Override
+        public void finish() throws IOException {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                workbook.write(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.dispose();
+            workbook.close();
+        }
+
+        /**
+         * Excel caps a sheet at 1,048,576 rows, so larger exports continue on "Music Database 2" and so on.
+         */
+        private void nextSheet() {
+            sheets++;
+            sheet = workbook.createSheet(sheets == 1 ? "Music Database" : "Music Database " + sheets);
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < COLUMN_NAMES.length; i++) {
+                headerRow.createCell(i).setCellValue(COLUMN_NAMES[i]);
+            }
+            rowIndex = 1;
+        }
+    }
+
+    private static final class CsvSink implements RowSink<String> {
+        private final Writer writer;
+
+        CsvSink(Path file) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(String.join(",", COLUMN_NAMES));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public boolean isParallel() {
+            return true;
+        }
+
+        @Override
+        public String prepare(MusicRecord record) {
+            return record.getId() + "," + quote(record.getTitle()) + "," + quote(record.getArtist()) + ","
+                    + quote(record.getAlbum()) + "," + quote(record.getGenre()) + "," + record.getDuration() + "\r\n";
+        }
+
+        @Override
+        public void write(String line) throws IOException {
+            writer.write(line);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        /**
+         * RFC 4180: fields containing a comma, quote or line break are quoted, quotes doubled; {@code null} is empty.
+         */
+        private static String quote(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private static final class BinarySink implements RowSink<MusicRecord> {
+        private final Path file;
+        private BinarySnapshotFormat.Columns columns;
+
+        BinarySink(Path file, int rows) {
+            this.file = file;
+            this.columns = new BinarySnapshotFormat.Columns(rows);
+        }
+
+        @Override
+        public MusicRecord prepare(MusicRecord record) {
+            return record;
+        }
+
+        @Override
+        public void write(MusicRecord record) {
+            columns.add(record);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            columns.writeTo(file);
+        }
+
+        @Override
+        public void close() {
+            columns = null;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Adds the records of an Excel ({@code .xlsx}) or CSV file. Works as a pipeline: a reader thread tokenizes the
+ * file (Excel through POI's streaming SAX reader, so the workbook is never loaded) into chunks of
+ * {@value #CHUNK_SIZE} rows; the chunks are converted, validated and checked for duplicate ids in parallel; and
+ * the calling thread is the single writer that applies them in file order and waits for durability once at the end.
+ * A header row naming the columns ({@code ID, Title, ...} in any order) is recognized; without one the columns are
+ * taken in export order. Invalid rows and ids that already exist are skipped and reported; the first row with
+ * a given id wins.
+ */
+public class MusicRecordImporter {
+    static final int CHUNK_SIZE = 8192;
+    static final int MAX_ERRORS = 100;
+    private static final String[] FIELDS = {"id", "title", "artist", "album", "genre", "duration"};
+    private static final int[] POSITIONAL = {0, 1, 2, 3, 4, 5};
+    private static final int QUEUED_CHUNKS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Rows as read from the file; {@code columns} maps each of {@link #FIELDS} to a cell index.
+     */
+    private record RawChunk(String source, int[] columns, List<String[]> rows, int[] rowNumbers, long estimatedRows) {
+    }
+
+    private record ParsedChunk(int rows, List<MusicRecord> records, int duplicates, int invalid, List<String> errors,
+                               long estimatedRows) {
+    }
+
+    private static final ParsedChunk END = new ParsedChunk(0, List.of(), 0, 0, List.of(), 0);
+
+    private final MusicDatabaseManager dbManager;
+
+    public MusicRecordImporter(MusicDatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * Imports {@code file}; a {@code .csv} extension selects CSV (UTF-8), anything else is read as Excel.
+     * Progress is reported in rows; the total is estimated while reading and is {@code -1} while unknown.
+     * If the listener throws, the import stops and the chunks applied so far are kept.
+     */
+    public ImportResult importFile(Path file, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<CompletableFuture<ParsedChunk>> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        Thread reader = Thread.ofPlatform().daemon().name("music-import-reader").start(() -> read(file, queue));
+        int imported = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        long rows = 0;
+        long ticket = 0;
+        List<String> errors = new ArrayList<>();
+        try {
+            listener.progress(0, -1);
+            for (ParsedChunk chunk = take(queue); chunk != END; chunk = take(queue)) {
+                duplicates += chunk.duplicates();
+                invalid += chunk.invalid();
+                addErrors(errors, chunk.errors());
+                MusicRecordBatch batch = new MusicRecordBatch();
+                for (MusicRecord record : chunk.records()) {
+                    // Earlier chunks are applied by now, so this also catches ids repeated across chunks.
+                    if (dbManager.getRecord(record.getId()) != null) {
+                        duplicates++;
+                        addErrors(errors, List.of("Record with the same ID already exists: " + record.getId()));
+                    } else {
+                        batch.add(record);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    int[] counts = new int[2];
+                    ticket = Math.max(ticket, applyChunk(batch, counts));
+                    imported += counts[0];
+                    duplicates += batch.size() - counts[0];
+                }
+                rows += chunk.rows();
+                listener.progress(rows, chunk.estimatedRows() < 0 ? -1 : Math.max(rows, chunk.estimatedRows()));
+            }
+        } catch (Throwable e) {
+            reader.interrupt();
+            if (ticket != 0) {
+                try {
+                    dbManager.awaitDurable(ticket);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        dbManager.awaitDurable(ticket);
+        listener.progress(rows, rows);
+        return new ImportResult(imported, duplicates, invalid, errors, System.nanoTime() - start);
+    }
+
+    /**
+     * A record added by someone else since the duplicate check makes the batch fail as a whole;
+     * the chunk is then checked again and applied without it.
+     */
+    private long applyChunk(MusicRecordBatch batch, int[] counts) throws IOException {
+        try {
+            return dbManager.applyDeferred(batch, counts);
+        } catch (IllegalArgumentException e) {
+            MusicRecordBatch retry = new MusicRecordBatch();
+            for (MusicDatabaseJournal.Entry change : batch.getChanges()) {
+                if (dbManager.getRecord(change.getId()) == null) {
+                    retry.add(change.getRecord());
+                }
+            }
+            return dbManager.applyDeferred(retry, counts);
+        }
+    }
+
+    private static ParsedChunk take(BlockingQueue<CompletableFuture<ParsedChunk>> queue) throws IOException {
+        try {
+            return queue.take().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted!");
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void addErrors(List<String> errors, List<String> more) {
+        for (int i = 0; i < more.size() && errors.size() < MAX_ERRORS; i++) {
+            errors.add(more.get(i));
+        }
+    }
+
+    /**
+     * Reader thread: ends the queue with {@link #END} or with the failure that stopped it.
+     */
+    private void read(Path file, BlockingQueue<CompletableFuture<ParsedChunk>> queue) {
+        Chunker chunker = new Chunker(queue);
+        CompletableFuture<ParsedChunk> end;
+        try {
+            if (MusicRecordExporter.Format.forPath(file) == MusicRecordExporter.Format.CSV) {
+                readCsv(file, chunker);
+            } else {
+                readExcel(file, chunker);
+            }
+            chunker.flush();
+            end = CompletableFuture.completedFuture(END);
+        } catch (Throwable e) {
+            end = CompletableFuture.failedFuture(e);
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            try {
+                queue.put(end);
+            } catch (InterruptedException e) {
+                // the writer has stopped
+            }
+        }
+    }
+
+    /**
+     * Cuts the rows of the reader thread into chunks and starts their conversion on the common pool.
+     * Blocks while the writer is {@link #QUEUED_CHUNKS} chunks behind.
+     */
+    private final class Chunker {
+        private final BlockingQueue<CompletableFuture<ParsedChunk>> queue;
+        private LongUnaryOperator estimator = rowsRead -> -1;
+        private String source;
+        private int[] columns;
+        private long rowsRead;
+        private List<String[]> rows;
+        private int[] rowNumbers;
+
+        Chunker(BlockingQueue<CompletableFuture<ParsedChunk>> queue) {
+            this.queue = queue;
+        }
+
+        /**
+         * Starts a file or sheet; its first row may be a header. {@code source} prefixes row numbers in messages.
+         */
+        void startSource(String source) {
+            flush();
+            this.source = source;
+            this.columns = null;
+        }
+
+        void row(int rowNumber, String[] cells) {
+            if (columns == null) {
+                columns = headerColumns(cells);
+                if (columns != null) {
+                    return;
+                }
+                columns = POSITIONAL;
+            }
+            if (rows == null) {
+                rows = new ArrayList<>(CHUNK_SIZE);
+                rowNumbers = new int[CHUNK_SIZE];
+            }
+            rowNumbers[rows.size()] = rowNumber;
+            rows.add(cells);
+            rowsRead++;
+            if (rows.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (rows == null) {
+                return;
+            }
+            RawChunk chunk = new RawChunk(source, columns, rows, rowNumbers, estimator.applyAsLong(rowsRead));
+            rows = null;
+            rowNumbers = null;
+            try {
+                queue.put(CompletableFuture.supplyAsync(() -> parse(chunk)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Import stopped!");
+            }
+        }
+    }
+
+    /**
+     * Column mapping if {@code cells} is a header row (it has an {@code ID} cell), otherwise {@code null}.
+     */
+    private static int[] headerColumns(String[] cells) {
+        List<String> names = new ArrayList<>(cells.length);
+        for (String cell : cells) {
+            names.add(cell == null ? "" : cell.trim().toLowerCase(Locale.ROOT));
+        }
+        if (!names.contains("id")) {
+            return null;
+        }
+        int[] columns = new int[FIELDS.length];
+        for (int i = 0; i < FIELDS.length; i++) {
+            columns[i] = names.indexOf(FIELDS[i]);
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Missing column: " + FIELDS[i]);
+            }
+        }
+        return columns;
+    }
+
+    private ParsedChunk parse(RawChunk chunk) {
+        List<MusicRecord> records = new ArrayList<>(chunk.rows().size());
+        Set<Integer> ids = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        int rows = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        for (int i = 0; i < chunk.rows().size(); i++) {
+            String[] cells = chunk.rows().get(i);
+            if (isBlank(cells)) {
+                continue;
+            }
+            rows++;
+            String message;
+            try {
+                MusicRecord record = toRecord(cells, chunk.columns());
+                if (ids.add(record.getId()) && dbManager.getRecord(record.getId()) == null) {
+                    records.add(record);
+                    continue;
+                }
+                duplicates++;
+                message = "Record with the same ID already exists: " + record.getId();
+            } catch (IllegalArgumentException e) {
+                invalid++;
+                message = e.getMessage();
+            }
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(chunk.source() + " " + chunk.rowNumbers()[i] + ": " + message);
+            }
+        }
+        return new ParsedChunk(rows, records, duplicates, invalid, errors, chunk.estimatedRows());
+    }
+
+    private static MusicRecord toRecord(String[] cells, int[] columns) {
+        int id = parseNumber(cell(cells, columns[0]).trim(), "id");
+        int duration = parseNumber(cell(cells, columns[5]).trim(), "duration");
+        if (duration < 0) {
+            throw new IllegalArgumentException("Field duration must not be negative!");
+        }
+        return new MusicRecord(id, text(cells, columns[1]), text(cells, columns[2]), text(cells, columns[3]),
+                text(cells, columns[4]), duration);
+    }
+
+    private static String cell(String[] cells, int column) {
+        return column < cells.length && cells[column] != null ? cells[column] : "";
+    }
+
+    private static String text(String[] cells, int column) {
+        String value = cell(cells, column);
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Accepts integral decimals such as {@code 180.0}, which is how spreadsheets often store whole numbers.
+     */
+    private static int parseNumber(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            try {
+                double number = Double.parseDouble(value);
+                if (number == Math.rint(number) && Math.abs(number) <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+            } catch (NumberFormatException ignored) {
+                // reported below
+            }
+            throw new IllegalArgumentException("Field " + field + " must be a number!");
+        }
+    }
+
+    private static boolean isBlank(String[] cells) {
+        for (String cell : cells) {
+            if (cell != null && !cell.isBlank()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * RFC 4180: quoted fields may contain commas, doubled quotes and line breaks. Row numbers count records,
+     * not lines; the total is estimated from the share of bytes read so far.
+     */
+    private static void readCsv(Path file, Chunker chunker) throws IOException {
+        long size = Files.size(file);
+        try (CountingInputStream counting = new CountingInputStream(Files.newInputStream(file));
+             Reader in = new InputStreamReader(counting, StandardCharsets.UTF_8)) {
+            chunker.estimator = rowsRead -> counting.count == 0 ? -1 : rowsRead * size / counting.count;
+            chunker.startSource("Row");
+            List<String> cells = new ArrayList<>(FIELDS.length);
+            StringBuilder field = new StringBuilder();
+            char[] buffer = new char[64 * 1024];
+            boolean inQuotes = false;
+            boolean afterQuote = false;
+            boolean skipLineFeed = false;
+            boolean rowStarted = false;
+            boolean first = true;
+            int rowNumber = 0;
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    if (first) {
+                        first = false;
+                        if (c == '\uFEFF') {
+                            continue;
+                        }
+                    }
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+                    if (inQuotes) {
+                        if (c == '"') {
+                            inQuotes = false;
+                            afterQuote = true;
+                        } else {
+                            field.append(c);
+                        }
+                        continue;
+                    }
+                    if (afterQuote) {
+                        afterQuote = false;
+                        if (c == '"') {
+                            field.append('"');
+                            inQuotes = true;
+                            continue;
+                        }
+                    }
+                    switch (c) {
+                        case ',' -> {
+                            cells.add(field.toString());
+                            field.setLength(0);
+                            rowStarted = true;
+                        }
+                        case '\r', '\n' -> {
+                            cells.add(field.toString());
+                            field.setLength(0);
+                            chunker.row(++rowNumber, cells.toArray(new String[0]));
+                            cells.clear();
+                            rowStarted = false;
+                            skipLineFeed = c == '\r';
+                        }
+                        case '"' -> {
+                            if (field.isEmpty()) {
+                                inQuotes = true;
+                            } else {
+                                field.append(c);
+                            }
+                            rowStarted = true;
+                        }
+                        default -> {
+                            field.append(c);
+                            rowStarted = true;
+                        }
+                    }
+                }
+            }
+            if (rowStarted || inQuotes || afterQuote) {
+                cells.add(field.toString());
+                chunker.row(++rowNumber, cells.toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Reads every sheet with the SAX event API; only the shared strings table is held in memory.
+     * The total is taken from each sheet's {@code <dimension>} element when the file has one.
+     */
+    private static void readExcel(Path file, Chunker chunker) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream in = sheets.next()) {
+                    chunker.startSource("Sheet '" + sheets.getSheetName() + "', row");
+                    SheetRows rows = new SheetRows(chunker);
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, rows, formatter, false) {
+                        @Override
+                        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+                            if ("dimension".equals(localName)) {
+                                rows.setDimension(attributes.getValue("ref"));
+                            }
+                            super.startElement(uri, localName, qName, attributes);
+                        }
+                    });
+                    parser.parse(new InputSource(in));
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Cannot read Excel file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects the cells of one sheet row; cells Excel left out (empty ones) become {@code null}.
+     */
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Chunker chunker;
+        private final List<String> cells = new ArrayList<>();
+        private final long rowsBefore;
+
+        SheetRows(Chunker chunker) {
+            this.chunker = chunker;
+            this.rowsBefore = chunker.rowsRead;
+        }
+
+        /**
+         * {@code ref} is the used range, e.g. {@code A1:F5000}.
+         */
+        void setDimension(String ref) {
+            if (ref == null) {
+                return;
+            }
+            int i = ref.length();
+            while (i > 0 && Character.isDigit(ref.charAt(i - 1))) {
+                i--;
+            }
+            if (i < ref.length()) {
+                long sheetRows = Long.parseLong(ref.substring(i));
+                chunker.estimator = rowsRead -> rowsBefore + sheetRows;
+            }
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            chunker.row(rowNum + 1, cells.toArray(new String[0]));
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? cells.size() : columnIndex(cellReference);
+            while (cells.size() < column) {
+                cells.add(null);
+            }
+            cells.add(formattedValue);
+        }
+
+        private static int columnIndex(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length() && Character.isLetter(cellReference.charAt(i)); i++) {
+                column = column * 26 + Character.toUpperCase(cellReference.charAt(i)) - 'A' + 1;
+            }
+            return column - 1;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Table model that holds the ids of all its rows but the records of the current page only, so only visible
+ * rows are ever read. Sorting and paging happen on the id array, and every change fires one table-wide event
+ * instead of one event per row. Sorting and fetching a page run on the service's threads, so painting a cell
+ * never waits for the manager's lock; the new rows replace the current ones on the event dispatch thread when
+ * they are ready.
+ */
+public class MusicRecordTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"ID", "Title", "Artist", "Album", "Genre", "Duration"};
+    private static final String[] COLUMN_FIELDS = {"id", "title", "artist", "album", "genre", "duration"};
+
+    private final MusicDatabaseService service;
+    private final int pageSize;
+    private int[] ids = new int[0];
+    private int page;
+    /** The records of the current page's rows; {@code null} where a record was deleted. */
+    private MusicRecord[] pageRecords = new MusicRecord[0];
+    private int sortColumn = -1;
+    private boolean descending;
+    /** Incremented whenever the rows are replaced, so a sort finishing after a newer change is dropped. */
+    private int generation;
+
+    /**
+     * @param pageSize rows per page, or {@code 0} to show every row on one page
+     */
+    public MusicRecordTableModel(MusicDatabaseService service, int pageSize) {
+        this.service = service;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Shows the given rows, e.g. from {@link MusicDatabaseManager#getRecordIds()}.
+     */
+    public void showIds(int[] recordIds) {
+        setIds(recordIds);
+    }
+
+    public void showRecords(List<MusicRecord> records) {
+        int[] recordIds = new int[records.size()];
+        for (int i = 0; i < recordIds.length; i++) {
+            recordIds[i] = records.get(i).getId();
+        }
+        setIds(recordIds);
+    }
+
+    public void clear() {
+        setIds(new int[0]);
+    }
+
+    /**
+     * Sorts all rows (not just the current page) by the column; sorting by the same column again
+     * reverses the order. The current rows stay visible until the sort finishes.
+     */
+    public void sortBy(int column) {
+        descending = column == sortColumn && !descending;
+        sortColumn = column;
+        sortAndShow(ids.clone());
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageCount() {
+        return pageSize == 0 ? 1 : Math.max(1, (ids.length + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * Shows another page once its records are fetched; {@link #getPage()} returns the old one until then.
+     */
+    public void setPage(int page) {
+        if (page < 0 || page >= getPageCount()) {
+            throw new IllegalArgumentException("Page out of range!");
+        }
+        showPage(ids, page, ++generation);
+    }
+
+    /**
+     * Fetches the records of the current page again, e.g. after one of them was edited.
+     */
+    public void reloadPage() {
+        int[] shownIds = ids;
+        int shownPage = page;
+        int requested = generation;
+        fetchPage(shownIds, shownPage).whenCompleteAsync((records, error) -> {
+            if (requested == generation && ids == shownIds && page == shownPage && error == null) {
+                pageRecords = records;
+                fireTableDataChanged();
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    public int getTotalRowCount() {
+        return ids.length;
+    }
+
+    /**
+     * The record shown in a row of the current page, or {@code null} if it was deleted meanwhile.
+     */
+    public MusicRecord getRecordAt(int row) {
+        return pageRecords[row];
+    }
+
+    /**
+     * Points the row showing {@code oldId} at {@code newId} after the record's id was edited, keeping its position.
+     */
+    public void replaceId(int oldId, int newId) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == oldId) {
+                ids[i] = newId;
+                int row = i - firstRow();
+                if (row >= 0 && row < getRowCount()) {
+                    reloadPage();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        if (pageSize == 0) {
+            return ids.length;
+        }
+        return Math.max(0, Math.min(pageSize, ids.length - firstRow()));
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    /**
+     * The {@link MusicDatabaseManager} field name shown in a column, e.g. {@code "title"}.
+     */
+    public String getColumnField(int column) {
+        return COLUMN_FIELDS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 5 ? Integer.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return true;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        MusicRecord record = getRecordAt(row);
+        if (record == null) {
+            return null;
+        }
+        return switch (column) {
+            case 0 -> record.getId();
+            case 1 -> record.getTitle();
+            case 2 -> record.getArtist();
+            case 3 -> record.getAlbum();
+            case 4 -> record.getGenre();
+            default -> record.getDuration();
+        };
+    }
+
+    private void setIds(int[] newIds) {
+        if (sortColumn < 0) {
+            showPage(newIds, 0, ++generation);
+        } else {
+            sortAndShow(newIds);
+        }
+    }
+
+    /**
+     * Shows {@code newIds} in the current sort order once the service has sorted them; if sorting fails
+     * they are shown unsorted.
+     */
+    private void sortAndShow(int[] newIds) {
+        int requested = ++generation;
+        service.sortIds(newIds, COLUMN_FIELDS[sortColumn], descending).whenCompleteAsync((sorted, error) -> {
+            if (requested == generation) {
+                showPage(error == null ? sorted : newIds, 0, requested);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Shows page {@code newPage} of {@code newIds} once its records are fetched, unless the rows were changed
+     * again meanwhile. If fetching fails the rows are shown without records.
+     */
+    private void showPage(int[] newIds, int newPage, int requested) {
+        fetchPage(newIds, newPage).whenCompleteAsync((records, error) -> {
+            if (requested == generation) {
+                ids = newIds;
+                page = newPage;
+                pageRecords = error == null ? records : new MusicRecord[pageEnd(newIds, newPage) - newPage * pageSize];
+                fireTableDataChanged();
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * The records of a page, one per row. {@link MusicDatabaseManager#getRecords(int[], int, int)} skips
+     * deleted records, so the rest are lined up with their ids again.
+     */
+    private CompletableFuture<MusicRecord[]> fetchPage(int[] pageIds, int pageNumber) {
+        int from = pageNumber * pageSize;
+        int to = pageEnd(pageIds, pageNumber);
+        if (from == to) {
+            return CompletableFuture.completedFuture(new MusicRecord[0]);
+        }
+        return service.getRecords(pageIds, from, to).thenApply(records -> {
+            MusicRecord[] rows = new MusicRecord[to - from];
+            int next = 0;
+            for (int i = from; i < to && next < records.size(); i++) {
+                if (records.get(next).getId() == pageIds[i]) {
+                    rows[i - from] = records.get(next++);
+                }
+            }
+            return rows;
+        });
+    }
+
+    private int pageEnd(int[] pageIds, int pageNumber) {
+        return pageSize == 0 ? pageIds.length : Math.min(pageIds.length, (pageNumber + 1) * pageSize);
+    }
+
+    private int firstRow() {
+        return page * pageSize;
+    }
+}
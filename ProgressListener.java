@@ -0,0 +1,9 @@
+/**
+ * Receives progress of long-running operations such as exports and imports; {@code total} is {@code -1} while
+ * not known. Called from the worker thread; throwing an unchecked exception
+ * (e.g. {@link java.util.concurrent.CancellationException}) aborts the operation.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    void progress(long done, long total);
+}
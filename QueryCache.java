@@ -0,0 +1,175 @@
+import javax.management.ConstructorParameters;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of query results as id arrays. Every entry names the field values it depends on, and the
+ * manager reports each value whose postings change, so only the entries that can be affected are dropped.
+ * Entries that depend on a whole field (range, prefix and text conditions) use {@link #ANY_VALUE}.
+ * Results are read and stored under the manager's read lock and invalidated under its write lock,
+ * so an entry can never be older than the indexes it was computed from.
+ */
+public class QueryCache {
+    static final Object ANY_VALUE = new Object();
+
+    record Dependency(String field, Object value) {
+    }
+
+    private record Entry(int[] ids, List<Dependency> dependencies) {
+    }
+
+    private final int maxEntries;
+    private final long maxIds;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Map<Object, Set<String>>> dependents = new HashMap<>();
+    private long cachedIds;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Holds at most {@code maxEntries} results with {@code maxIds} ids in total; larger results are not cached.
+     */
+    QueryCache(int maxEntries, long maxIds) {
+        this.maxEntries = maxEntries;
+        this.maxIds = maxIds;
+    }
+
+    synchronized int[] get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.ids();
+    }
+
+    synchronized void put(String key, int[] ids, List<Dependency> dependencies) {
+        if (ids.length > maxIds) {
+            return;
+        }
+        remove(key);
+        Entry entry = new Entry(ids, List.copyOf(new LinkedHashSet<>(dependencies)));
+        entries.put(key, entry);
+        cachedIds += ids.length;
+        for (Dependency dependency : entry.dependencies()) {
+            dependents.computeIfAbsent(dependency.field(), f -> new HashMap<>())
+                    .computeIfAbsent(dependency.value(), v -> new HashSet<>()).add(key);
+        }
+        while (entries.size() > maxEntries || cachedIds > maxIds) {
+            remove(entries.keySet().iterator().next());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops the entries that depend on {@code value} of {@code fieldName} or on the whole field.
+     */
+    synchronized void invalidate(String fieldName, Object value) {
+        Map<Object, Set<String>> byValue = dependents.get(fieldName);
+        if (byValue == null) {
+            return;
+        }
+        drop(byValue.get(ANY_VALUE));
+        if (value != null) {
+            drop(byValue.get(value));
+        }
+    }
+
+    synchronized void invalidate(String fieldName, int value) {
+        if (dependents.containsKey(fieldName)) {
+            invalidate(fieldName, Integer.valueOf(value));
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        dependents.clear();
+        cachedIds = 0;
+    }
+
+    Stats stats() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size);
+    }
+
+    private void drop(Set<String> keys) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : new ArrayList<>(keys)) {
+            remove(key);
+            invalidations.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        cachedIds -= entry.ids().length;
+        for (Dependency dependency : entry.dependencies()) {
+            Map<Object, Set<String>> byValue = dependents.get(dependency.field());
+            Set<String> keys = byValue.get(dependency.value());
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                byValue.remove(dependency.value());
+                if (byValue.isEmpty()) {
+                    dependents.remove(dependency.field());
+                }
+            }
+        }
+    }
+
+    /**
+     * Hit and invalidation counts since the database was opened; also the JMX representation of the cache.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int entries;
+
+        @ConstructorParameters({"hits", "misses", "evictions", "invalidations", "entries"})
+        public Stats(long hits, long misses, long evictions, long invalidations, int entries) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+        public long getMisses() {
+            return misses;
+        }
+        public long getEvictions() {
+            return evictions;
+        }
+        public long getInvalidations() {
+            return invalidations;
+        }
+        public int getEntries() {
+            return entries;
+        }
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, %d entries",
+                    hits, misses, getHitRate() * 100, evictions, invalidations, entries);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Execution order chosen for a {@link MusicQuery}: conditions sorted by estimated result size, each either
+ * intersected as a sorted id list or, once the running result is small, checked record by record.
+ */
+public class QueryPlan {
+    public enum Strategy { INDEX, INTERSECT, FILTER }
+
+    public static final class Step {
+        private final MusicQuery.Condition condition;
+        private final long estimatedRows;
+        private Strategy strategy;
+
+        Step(MusicQuery.Condition condition, long estimatedRows) {
+            this.condition = condition;
+            this.estimatedRows = estimatedRows;
+        }
+
+        public MusicQuery.Condition getCondition() {
+            return condition;
+        }
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private final int totalRecords;
+
+    QueryPlan(List<Step> steps, int totalRecords) {
+        this.steps.addAll(steps);
+        this.totalRecords = totalRecords;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Query plan over ").append(totalRecords).append(" records");
+        if (steps.isEmpty()) {
+            sb.append("\n  1. FULL SCAN");
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            sb.append("\n  ").append(i + 1).append(". ").append(step.strategy).append(' ')
+                    .append(step.condition).append(" (est. ").append(step.estimatedRows).append(" rows)");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * New value for one field of one record, as applied by {@link MusicDatabaseManager#updateRecords(java.util.List)}.
+ * Numeric fields ({@code id}, {@code duration}) take the number as text.
+ */
+public class RecordUpdate {
+    private final int id;
+    private final String field;
+    private final String value;
+
+    public RecordUpdate(int id, String field, String value) {
+        this.id = id;
+        this.field = field;
+        this.value = value;
+    }
+
+    public int getId() {
+        return id;
+    }
+    public String getField() {
+        return field;
+    }
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + field + " = '" + value + "'";
+    }
+}
@@ -0,0 +1,21 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command-line converter between the JSON and binary ({@code .mdb}) database formats.
+ * The direction follows the file extensions: {@code SnapshotConverter music_database.json music_database.mdb}.
+ */
+public class SnapshotConverter {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SnapshotConverter <source> <target>");
+            System.exit(1);
+        }
+        Path source = Paths.get(args[0]);
+        Path target = Paths.get(args[1]);
+        long start = System.nanoTime();
+        SnapshotFormat.convert(source, target);
+        System.out.printf("Converted %s to %s in %.1f ms%n", source, target, (System.nanoTime() - start) / 1_000_000.0);
+    }
+}
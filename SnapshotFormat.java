@@ -0,0 +1,29 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * On-disk representation of the record table. The format is chosen by file extension:
+ * {@code .mdb} is the binary columnar format, everything else is JSON.
+ */
+public interface SnapshotFormat {
+    void read(Path file, Consumer<MusicRecord> consumer) throws IOException;
+
+    void write(Path file, Collection<MusicRecord> records) throws IOException;
+
+    static SnapshotFormat forPath(Path file) {
+        if (file.getFileName().toString().endsWith(BinarySnapshotFormat.EXTENSION)) {
+            return new BinarySnapshotFormat();
+        }
+        return new JsonSnapshotFormat();
+    }
+
+    static void convert(Path source, Path target) throws IOException {
+        List<MusicRecord> records = new ArrayList<>();
+        forPath(source).read(source, records::add);
+        forPath(target).write(target, records);
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.*;
+
+/**
+ * Loads entries that are already in ascending natural key order into a {@link TreeMap}. Handing them to
+ * {@link TreeMap#putAll(Map)} as a {@link SortedMap} on an empty map builds the tree in linear time without
+ * comparing keys, which is how indexes are loaded from a backup.
+ */
+final class SortedEntries {
+    private SortedEntries() {
+    }
+
+    /**
+     * Adds {@code keys[i] -> values[i]} to {@code target}; the keys must be ascending and distinct. Linear
+     * when {@code target} is empty and in natural order, otherwise each entry is put on its own.
+     */
+    static <K, V> void putAll(TreeMap<K, V> target, List<K> keys, List<V> values) {
+        target.putAll(new Adapter<>(keys, values));
+    }
+
+    /**
+     * Just enough of a {@link SortedMap} for {@link TreeMap#putAll(Map)}, which only reads the size, the
+     * comparator and the entries in order; the other sorted views go through a copy.
+     */
+    private static final class Adapter<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+        private final List<K> keys;
+        private final List<V> values;
+
+        Adapter(List<K> keys, List<V> values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.size();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            if (next >= keys.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>(keys.get(next), values.get(next));
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K firstKey() {
+            return new TreeMap<>(this).firstKey();
+        }
+
+        @Override
+        public K lastKey() {
+            return new TreeMap<>(this).lastKey();
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return new TreeMap<>(this).subMap(fromKey, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return new TreeMap<>(this).headMap(toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return new TreeMap<>(this).tailMap(fromKey);
+        }
+    }
+}
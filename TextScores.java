@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Scores of one text search, kept in primitive arrays instead of boxed maps. For each record it holds the sum
+ * over query words of that word's best match and the number of words that matched; an open-addressing table
+ * maps record ids to dense slots. Call {@link #nextToken()} before collecting the matches of each query word.
+ */
+class TextScores {
+    private int[] ids = new int[64];
+    private double[] scores = new double[64];
+    private int[] matched = new int[64];
+    private double[] tokenBest = new double[64];
+    private int[] tokenRound = new int[64];
+    private int[] table = new int[256];
+    private int size;
+    private int round;
+
+    void nextToken() {
+        round++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int idAt(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Counts a match of the current word; a record matched by several fields or tokens keeps the best score.
+     */
+    void add(int id, double score) {
+        int slot = findSlot(id);
+        if (slot < 0) {
+            slot = insert(id);
+        }
+        accumulate(slot, score);
+    }
+
+    /**
+     * Like {@link #add(int, double)}, but only for records already matched by an earlier word.
+     */
+    void addIfPresent(int id, double score) {
+        int slot = findSlot(id);
+        if (slot >= 0) {
+            accumulate(slot, score);
+        }
+    }
+
+    /**
+     * Ids of the best {@code limit} records: most matched words first, then highest score, then lowest id.
+     * Selects with a bounded heap, so only {@code limit} records are ever sorted.
+     */
+    int[] top(int limit) {
+        int capacity = Math.min(limit, size);
+        int[] heap = new int[capacity];
+        int heapSize = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (heapSize < capacity) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++);
+            } else if (capacity > 0 && ranksBefore(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, heapSize);
+            }
+        }
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = ids[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        return result;
+    }
+
+    /**
+     * {@code scores} holds the sum for earlier words and {@code tokenBest} the best match of the latest word
+     * that matched, which is added in once the record is matched by a later word.
+     */
+    private void accumulate(int slot, double score) {
+        if (tokenRound[slot] != round) {
+            scores[slot] += tokenBest[slot];
+            tokenRound[slot] = round;
+            tokenBest[slot] = score;
+            matched[slot]++;
+        } else if (score > tokenBest[slot]) {
+            tokenBest[slot] = score;
+        }
+    }
+
+    private double score(int slot) {
+        return scores[slot] + tokenBest[slot];
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        if (matched[a] != matched[b]) {
+            return matched[a] > matched[b];
+        }
+        double scoreA = score(a);
+        double scoreB = score(b);
+        if (scoreA != scoreB) {
+            return scoreA > scoreB;
+        }
+        return ids[a] < ids[b];
+    }
+
+    /**
+     * The heap keeps the worst of the selected records at its root.
+     */
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksBefore(heap[parent], slot)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int slot = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && ranksBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksBefore(slot, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    private int findSlot(int id) {
+        int mask = table.length - 1;
+        for (int i = hash(id) & mask; table[i] != 0; i = (i + 1) & mask) {
+            if (ids[table[i] - 1] == id) {
+                return table[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(int id) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            matched = Arrays.copyOf(matched, capacity);
+            tokenBest = Arrays.copyOf(tokenBest, capacity);
+            tokenRound = Arrays.copyOf(tokenRound, capacity);
+            table = new int[capacity * 4];
+            for (int slot = 0; slot < size; slot++) {
+                insertIntoTable(ids[slot], slot);
+            }
+        }
+        ids[size] = id;
+        insertIntoTable(id, size);
+        return size++;
+    }
+
+    private void insertIntoTable(int id, int slot) {
+        int mask = table.length - 1;
+        int i = hash(id) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = slot + 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index from normalized word tokens to record ids, with a trigram index over the
+ * vocabulary for typo-tolerant lookups. Not thread-safe; {@link MusicDatabaseManager} guards it.
+ */
+public class TokenIndex {
+    /** Marks on Latin letters only; Cyrillic letters such as "й" are letters of their own, not accented ones. */
+    private static final Pattern LATIN_COMBINING_MARKS = Pattern.compile("(?<=\\p{IsLatin})\\p{M}+");
+    private static final Pattern TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final double PREFIX_SCORE = 0.8;
+
+    private final TreeMap<String, IntPostings> postings = new TreeMap<>();
+    private final Map<String, Set<String>> tokensByTrigram = new HashMap<>();
+
+    /**
+     * Case-folds and strips diacritics from Latin letters, so "Beyoncé" matches "beyonce". Cyrillic letters keep
+     * theirs, so "мой" and "мои" stay different words; only "ё" is folded to "е", so "Ёлка" matches "елка".
+     */
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        String stripped = LATIN_COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return Normalizer.normalize(stripped, Normalizer.Form.NFC).toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    public static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATORS.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public void add(int id, String text) {
+        for (String token : new HashSet<>(tokenize(text))) {
+            IntPostings ids = postings.get(token);
+            if (ids == null) {
+                ids = new IntPostings();
+                postings.put(token, ids);
+                for (String gram : trigrams(token)) {
+                    tokensByTrigram.computeIfAbsent(gram, k -> new HashSet<>()).add(token);
+                }
+            }
+            ids.add(id);
+        }
+    }
+
+    public void remove(int id, String text) {
+        for (String token : new HashSet<>(tokenize(text))) {
+            IntPostings ids = postings.get(token);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(token);
+                for (String gram : trigrams(token)) {
+                    Set<String> tokens = tokensByTrigram.get(gram);
+                    tokens.remove(token);
+                    if (tokens.isEmpty()) {
+                        tokensByTrigram.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        tokensByTrigram.clear();
+    }
+
+    /**
+     * Writes the tokens in order with their postings; the trigram index is derived again on reading.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(postings.size());
+        for (Map.Entry<String, IntPostings> entry : postings.entrySet()) {
+            MusicDatabaseJournal.writeString(out, entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    /**
+     * Replaces the contents with an index written by {@link #writeTo(DataOutputStream)}.
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        clear();
+        int count = in.readInt();
+        List<String> tokens = new ArrayList<>(count);
+        List<IntPostings> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String token = MusicDatabaseJournal.readString(in);
+            tokens.add(token);
+            ids.add(IntPostings.readFrom(in));
+            for (String gram : trigrams(token)) {
+                tokensByTrigram.computeIfAbsent(gram, k -> new HashSet<>()).add(token);
+            }
+        }
+        SortedEntries.putAll(postings, tokens, ids);
+    }
+
+    /**
+     * Tokens similar to {@code queryToken} with their match score: 1.0 for the token itself, 0.8 for a token
+     * starting with it, and less for tokens within one or two edits.
+     */
+    public Map<String, Double> matchingTokens(String queryToken) {
+        Map<String, Double> matches = new HashMap<>();
+        if (postings.containsKey(queryToken)) {
+            matches.put(queryToken, 1.0);
+        }
+        if (queryToken.length() >= 3) {
+            int expansions = 0;
+            for (String token : postings.tailMap(queryToken, false).keySet()) {
+                if (!token.startsWith(queryToken) || ++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                matches.put(token, PREFIX_SCORE);
+            }
+        }
+        int maxEdits = maxEdits(queryToken);
+        if (maxEdits > 0) {
+            for (String candidate : fuzzyCandidates(queryToken, maxEdits)) {
+                if (matches.containsKey(candidate)) {
+                    continue;
+                }
+                int distance = editDistance(queryToken, candidate, maxEdits);
+                if (distance <= maxEdits) {
+                    matches.put(candidate, PREFIX_SCORE * (1.0 - (double) distance / (queryToken.length() + 1)));
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Ids of the records containing {@code token}, which must be a key returned by {@link #matchingTokens(String)}.
+     */
+    IntPostings postingsOf(String token) {
+        return postings.get(token);
+    }
+
+    /**
+     * Scores every record containing a token similar to {@code queryToken}, weighted by {@code weight}, into
+     * {@code scores}. With {@code scoredOnly} only records already in {@code scores} are rescored.
+     */
+    void collectMatches(String queryToken, double weight, TextScores scores, boolean scoredOnly) {
+        for (Map.Entry<String, Double> match : matchingTokens(queryToken).entrySet()) {
+            double score = match.getValue() * weight;
+            IntPostings ids = postings.get(match.getKey());
+            if (scoredOnly && scores.size() < ids.size()) {
+                for (int slot = 0; slot < scores.size(); slot++) {
+                    int id = scores.idAt(slot);
+                    if (ids.contains(id)) {
+                        scores.addIfPresent(id, score);
+                    }
+                }
+            } else {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (scoredOnly) {
+                        scores.addIfPresent(ids.get(i), score);
+                    } else {
+                        scores.add(ids.get(i), score);
+                    }
+                }
+            }
+        }
+    }
+
+    public int documentFrequency(String token) {
+        IntPostings ids = postings.get(token);
+        return ids == null ? 0 : ids.size();
+    }
+
+    private static int maxEdits(String token) {
+        if (token.length() <= 3 || token.chars().allMatch(Character::isDigit)) {
+            return 0;
+        }
+        return token.length() <= 6 ? 1 : 2;
+    }
+
+    /**
+     * One edit changes at most three trigrams of a padded token, so a token within {@code maxEdits}
+     * shares at least {@code grams - 3 * maxEdits} trigrams with the query.
+     */
+    private Set<String> fuzzyCandidates(String queryToken, int maxEdits) {
+        Set<String> grams = trigrams(queryToken);
+        int required = Math.max(1, grams.size() - 3 * maxEdits);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            for (String token : tokensByTrigram.getOrDefault(gram, Collections.emptySet())) {
+                if (Math.abs(token.length() - queryToken.length()) <= maxEdits) {
+                    shared.merge(token, 1, Integer::sum);
+                }
+            }
+        }
+        Set<String> candidates = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() >= required) {
+                candidates.add(entry.getKey());
+            }
+        }
+        return candidates;
+    }
+
+    private static Set<String> trigrams(String token) {
+        String padded = "$" + token + "$";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Levenshtein distance, giving up with {@code maxEdits + 1} as soon as a row exceeds the bound.
+     */
+    private static int editDistance(String a, String b, int maxEdits) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
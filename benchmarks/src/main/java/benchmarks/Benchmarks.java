@@ -0,0 +1,45 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Runs the benchmarks with the gc profiler (allocation rate per operation next to throughput) and writes
+ * {@code results-<label>.json}, so that runs of two versions can be compared side by side.
+ * Usage: {@code java -cp target/benchmarks.jar benchmarks.Benchmarks <label> [benchmark regex]}.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: Benchmarks <label> [benchmark regex]");
+            System.exit(1);
+        }
+        Options options = new OptionsBuilder()
+                .include(args.length > 1 ? args[1] : "benchmarks\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("results-" + args[0] + ".json")
+                .build();
+        new Runner(options).run();
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
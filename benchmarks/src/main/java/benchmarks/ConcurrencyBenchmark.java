@@ -0,0 +1,123 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Artist lookups from several threads at once on a journaled database. The {@code read*} benchmarks run only
+ * readers, so their total throughput shows how reads scale across cores under the read lock. The {@code mixed}
+ * group runs three readers next to one writer that keeps adding and deleting records, which shows what the
+ * write lock costs the readers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ConcurrencyBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    private Path directory;
+    private Object manager;
+    private String[] artists;
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threads) {
+            next = threads.getThreadIndex() * 97;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private final SplittableRandom random = new SplittableRandom(7);
+        private int nextId;
+        private boolean added;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrencyBenchmark benchmark) {
+            nextId = benchmark.size;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("music-db-bench");
+        manager = MusicDb.newManager(directory.resolve("music.json").toString(), true);
+        MusicDb.createDatabase(manager);
+        MusicDb.saveDatabase(manager, RecordGenerator.generate(size));
+        artists = new String[RecordGenerator.artistCount(size)];
+        for (int i = 0; i < artists.length; i++) {
+            artists[i] = RecordGenerator.artist(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MusicDb.close(manager);
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<?> read1(Reader reader) throws Throwable {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public List<?> read2(Reader reader) throws Throwable {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<?> read4(Reader reader) throws Throwable {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<?> read8(Reader reader) throws Throwable {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public List<?> mixedRead(Reader reader) throws Throwable {
+        return lookup(reader);
+    }
+
+    /**
+     * Adds a record above the generated ids on one call and deletes it on the next, so the database keeps its size.
+     */
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite(Writer writer) throws Throwable {
+        if (writer.added) {
+            MusicDb.deleteRecordByKey(manager, writer.nextId++);
+        } else {
+            MusicDb.addRecord(manager, RecordGenerator.next(writer.random, writer.nextId, size));
+        }
+        writer.added = !writer.added;
+    }
+
+    private List<?> lookup(Reader reader) throws Throwable {
+        String artist = artists[reader.next % artists.length];
+        reader.next++;
+        return MusicDb.searchByField(manager, "artist", artist);
+    }
+}
@@ -0,0 +1,205 @@
+package benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress test for concurrent use of one journaled database. Writers add, retitle, delete and move records between
+ * their own two artists and check that each change is visible to them at once. Readers look up random artists,
+ * including the writers', and check that every returned record has the artist it was found under and that no id
+ * repeats, so a reader seeing an index half way through a write fails. Afterwards each writer's records are compared
+ * with what it wrote, both in memory and after reopening the files. Exits with status 1 on any violation.
+ * Usage: {@code java -cp target/benchmarks.jar benchmarks.ConcurrencyStress [records] [seconds] [readers] [writers]}.
+ */
+public final class ConcurrencyStress {
+    private static final int IDS_PER_WRITER = 10_000_000;
+
+    private final int size;
+    private final int writers;
+    private final Object manager;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final List<Map<Integer, Written>> written = new ArrayList<>();
+
+    private record Written(String title, String artist) {
+    }
+
+    private ConcurrencyStress(int size, int writers, Object manager) {
+        this.size = size;
+        this.writers = writers;
+        this.manager = manager;
+        for (int w = 0; w < writers; w++) {
+            written.add(new HashMap<>());
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int writers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+        Path directory = Files.createTempDirectory("music-db-stress");
+        String databasePath = directory.resolve("music.json").toString();
+        Object manager = MusicDb.newManager(databasePath, true);
+        MusicDb.createDatabase(manager);
+        MusicDb.saveDatabase(manager, RecordGenerator.generate(size));
+
+        ConcurrencyStress stress = new ConcurrencyStress(size, writers, manager);
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int r = 0; r < readers; r++) {
+            long seed = r;
+            threads.add(stress.thread("reader-" + r, start, () -> stress.read(new SplittableRandom(seed))));
+        }
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(stress.thread("writer-" + w, start, () -> stress.write(writer, new SplittableRandom(1000 + writer))));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        stress.stopped.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        stress.verify(manager, "in memory");
+        MusicDb.close(manager);
+        Object reopened = MusicDb.newManager(databasePath, true);
+        int records = MusicDb.openDatabase(reopened).size();
+        int expected = size + stress.written.stream().mapToInt(Map::size).sum();
+        if (records != expected) {
+            stress.violations.add("reopened database has " + records + " records, expected " + expected);
+        }
+        stress.verify(reopened, "after reopening");
+        MusicDb.close(reopened);
+        Benchmarks.deleteDirectory(directory);
+
+        System.out.printf("%d readers, %d writers, %d s: %d reads, %d writes, %d violations%n",
+                readers, writers, seconds, stress.reads.sum(), stress.writes.sum(), stress.violations.size());
+        stress.violations.stream().limit(20).forEach(System.out::println);
+        System.exit(stress.violations.isEmpty() ? 0 : 1);
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void run() throws Throwable;
+    }
+
+    private Thread thread(String name, CountDownLatch start, Body body) {
+        return new Thread(() -> {
+            try {
+                start.await();
+                body.run();
+            } catch (Throwable e) {
+                violations.add(name + " failed: " + e);
+                stopped.set(true);
+            }
+        }, name);
+    }
+
+    private void read(SplittableRandom random) throws Throwable {
+        int artists = RecordGenerator.artistCount(size);
+        while (!stopped.get()) {
+            String artist = random.nextInt(4) == 0 ? writerArtist(random.nextInt(writers), random.nextBoolean())
+                    : RecordGenerator.artist(random.nextInt(artists));
+            Set<Integer> ids = new HashSet<>();
+            for (Object record : MusicDb.searchByField(manager, "artist", artist)) {
+                if (!artist.equals(MusicDb.artist(record))) {
+                    violations.add("lookup of " + artist + " returned record " + MusicDb.id(record) + " of " + MusicDb.artist(record));
+                }
+                if (!ids.add(MusicDb.id(record))) {
+                    violations.add("lookup of " + artist + " returned record " + MusicDb.id(record) + " twice");
+                }
+            }
+            int id = random.nextInt(size);
+            Object record = MusicDb.getRecord(manager, id);
+            if (record == null || MusicDb.id(record) != id) {
+                violations.add("generated record " + id + " not found");
+            }
+            reads.increment();
+        }
+    }
+
+    /**
+     * Each writer owns a range of ids and two artists, and remembers the title and artist of every record it keeps.
+     */
+    private void write(int writer, SplittableRandom random) throws Throwable {
+        Map<Integer, Written> records = written.get(writer);
+        int nextId = size + writer * IDS_PER_WRITER;
+        while (!stopped.get()) {
+            int operation = records.isEmpty() ? 0 : random.nextInt(5);
+            if (operation <= 1) {
+                int id = nextId++;
+                Written record = new Written("Stress " + id, writerArtist(writer, false));
+                MusicDb.addRecord(manager, MusicDb.newRecord(id, record.title(), record.artist(), "Stress Album", "Stress", 200));
+                records.put(id, record);
+                expectRecord(id, record);
+            } else {
+                int id = anyKey(records, random);
+                Written current = records.get(id);
+                if (operation == 2) {
+                    Written record = new Written("Retitled " + id + " " + random.nextInt(1000), current.artist());
+                    MusicDb.updateRecord(manager, id, "title", record.title());
+                    records.put(id, record);
+                    expectRecord(id, record);
+                } else if (operation == 3) {
+                    String artist = writerArtist(writer, current.artist().equals(writerArtist(writer, false)));
+                    Written record = new Written(current.title(), artist);
+                    MusicDb.updateRecord(manager, id, "artist", artist);
+                    records.put(id, record);
+                    expectRecord(id, record);
+                } else {
+                    MusicDb.deleteRecordByKey(manager, id);
+                    records.remove(id);
+                    if (MusicDb.getRecord(manager, id) != null) {
+                        violations.add("deleted record " + id + " still visible to its writer");
+                    }
+                }
+            }
+            writes.increment();
+        }
+    }
+
+    private void expectRecord(int id, Written expected) throws Throwable {
+        Object record = MusicDb.getRecord(manager, id);
+        if (record == null || !expected.equals(new Written(MusicDb.title(record), MusicDb.artist(record)))) {
+            violations.add("record " + id + " not visible to its writer as written");
+        }
+    }
+
+    private void verify(Object database, String when) throws Throwable {
+        for (int w = 0; w < writers; w++) {
+            Map<Integer, Written> found = new HashMap<>();
+            for (boolean moved : new boolean[]{false, true}) {
+                for (Object record : MusicDb.searchByField(database, "artist", writerArtist(w, moved))) {
+                    found.put(MusicDb.id(record), new Written(MusicDb.title(record), MusicDb.artist(record)));
+                }
+            }
+            if (!found.equals(written.get(w))) {
+                violations.add("writer " + w + " " + when + ": " + found.size() + " records, expected " + written.get(w).size());
+            }
+        }
+    }
+
+    private static String writerArtist(int writer, boolean moved) {
+        return "Stress Writer " + writer + (moved ? " (moved)" : "");
+    }
+
+    private static int anyKey(Map<Integer, Written> map, SplittableRandom random) {
+        int skip = random.nextInt(Math.min(map.size(), 32));
+        Iterator<Integer> keys = map.keySet().iterator();
+        for (int i = 0; i < skip; i++) {
+            keys.next();
+        }
+        return keys.next();
+    }
+}
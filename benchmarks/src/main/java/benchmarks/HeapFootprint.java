@@ -0,0 +1,153 @@
+package benchmarks;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Retained heap of the record store and indexes, measured with JOL, for the current layout and for the layout
+ * before records and postings were made compact: boxed {@code Integer} keys in a {@code LinkedHashMap}, postings
+ * as lists of record references or sets of boxed ids, and separate string copies in every record as the JSON
+ * parser creates them. The current numbers come from a manager that loaded the same records from its file; the
+ * previous layout is rebuilt here from those records. The query cache and duration totals are left out since
+ * they did not exist before either change.
+ * Usage: {@code java -Djdk.attach.allowAttachSelf -Xmx8g -cp target/benchmarks.jar benchmarks.HeapFootprint [records...]}.
+ */
+public final class HeapFootprint {
+    private static final List<String> STORE_FIELDS = List.of("recordById", "indexedFields", "numericIndexes",
+            "sharedStrings", "textIndexes");
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        int[] sizes = args.length == 0 ? new int[]{100_000, 500_000, 1_000_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        System.out.printf("%10s  %-8s  %12s  %12s  %12s%n", "records", "layout", "total MB", "records MB", "text MB");
+        for (int size : sizes) {
+            Path directory = Files.createTempDirectory("music-db-footprint");
+            String databasePath = directory.resolve("music.json").toString();
+            Object writer = MusicDb.newManager(databasePath, false);
+            MusicDb.createDatabase(writer);
+            MusicDb.saveDatabase(writer, RecordGenerator.generate(size));
+            MusicDb.close(writer);
+
+            Object manager = MusicDb.newManager(databasePath, false);
+            List<?> records = MusicDb.openDatabase(manager);
+            Map<String, Object> current = new LinkedHashMap<>();
+            for (String name : STORE_FIELDS) {
+                Field field = manager.getClass().getDeclaredField(name);
+                field.setAccessible(true);
+                current.put(name, field.get(manager));
+            }
+            print(size, "current", current);
+
+            PreviousLayout previous = new PreviousLayout();
+            for (Object record : records) {
+                previous.add(record);
+            }
+            records = null;
+            print(size, "previous", previous.roots());
+
+            MusicDb.close(manager);
+            Benchmarks.deleteDirectory(directory);
+        }
+    }
+
+    private static void print(int size, String layout, Map<String, Object> roots) {
+        long total = GraphLayout.parseInstance(roots.values().toArray()).totalSize();
+        long records = GraphLayout.parseInstance(roots.get("recordById")).totalSize();
+        long text = GraphLayout.parseInstance(roots.get("textIndexes")).totalSize();
+        System.out.printf("%10d  %-8s  %12.1f  %12.1f  %12.1f%n", size, layout, mb(total), mb(records), mb(text));
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    /**
+     * The store and indexes as they were kept before the compact layout, filled the same way.
+     */
+    private static final class PreviousLayout {
+        private final Map<Integer, Object> recordById = new LinkedHashMap<>();
+        private final Map<String, TreeMap<String, List<Object>>> indexedFields = new HashMap<>();
+        private final Map<String, TreeMap<Integer, List<Object>>> numericIndexes = new HashMap<>();
+        private final Map<String, TextIndex> textIndexes = new HashMap<>();
+
+        PreviousLayout() {
+            for (String field : List.of("title", "artist", "album", "genre")) {
+                indexedFields.put(field, new TreeMap<>());
+            }
+            for (String field : List.of("id", "duration")) {
+                numericIndexes.put(field, new TreeMap<>());
+            }
+            for (String field : List.of("title", "artist", "album")) {
+                textIndexes.put(field, new TextIndex());
+            }
+        }
+
+        /**
+         * Copies the record with strings of its own, as each record had after parsing.
+         */
+        void add(Object loaded) throws Throwable {
+            Object record = MusicDb.newRecord(MusicDb.id(loaded), copy(MusicDb.title(loaded)), copy(MusicDb.artist(loaded)),
+                    copy(MusicDb.album(loaded)), copy(MusicDb.genre(loaded)), MusicDb.duration(loaded));
+            int id = MusicDb.id(record);
+            recordById.put(id, record);
+            index(numericIndexes.get("id"), id, record);
+            index(numericIndexes.get("duration"), MusicDb.duration(record), record);
+            index(indexedFields.get("title"), MusicDb.title(record), record);
+            index(indexedFields.get("artist"), MusicDb.artist(record), record);
+            index(indexedFields.get("album"), MusicDb.album(record), record);
+            index(indexedFields.get("genre"), MusicDb.genre(record), record);
+            textIndexes.get("title").add(id, MusicDb.title(record));
+            textIndexes.get("artist").add(id, MusicDb.artist(record));
+            textIndexes.get("album").add(id, MusicDb.album(record));
+        }
+
+        Map<String, Object> roots() {
+            Map<String, Object> roots = new LinkedHashMap<>();
+            roots.put("recordById", recordById);
+            roots.put("indexedFields", indexedFields);
+            roots.put("numericIndexes", numericIndexes);
+            roots.put("textIndexes", textIndexes);
+            return roots;
+        }
+
+        private static <K> void index(TreeMap<K, List<Object>> index, K key, Object record) {
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+            }
+        }
+
+        private static String copy(String value) {
+            return value == null ? null : new String(value);
+        }
+    }
+
+    private static final class TextIndex {
+        private final TreeMap<String, Set<Integer>> postings = new TreeMap<>();
+        private final Map<String, Set<String>> tokensByTrigram = new HashMap<>();
+
+        void add(int id, String text) throws Throwable {
+            if (text == null) {
+                return;
+            }
+            for (String token : new HashSet<>(MusicDb.tokenize(text))) {
+                Set<Integer> ids = postings.get(token);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    postings.put(token, ids);
+                    String padded = "$" + token + "$";
+                    for (int i = 0; i + 3 <= padded.length(); i++) {
+                        tokensByTrigram.computeIfAbsent(padded.substring(i, i + 3), k -> new HashSet<>()).add(token);
+                    }
+                }
+                ids.add(id);
+            }
+        }
+    }
+}
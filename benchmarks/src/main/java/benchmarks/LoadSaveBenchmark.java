@@ -0,0 +1,62 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold {@code openDatabase} (a fresh manager per call, so every call parses the file and builds the indexes)
+ * and full {@code saveDatabase} rewrites, in both snapshot formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LoadSaveBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({".json", ".mdb"})
+    String format;
+
+    private Path directory;
+    private String databasePath;
+    private List<Object> records;
+    private Object saver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("music-db-bench");
+        databasePath = directory.resolve("music" + format).toString();
+        records = RecordGenerator.generate(size);
+        saver = MusicDb.newManager(databasePath, false);
+        MusicDb.createDatabase(saver);
+        MusicDb.saveDatabase(saver, records);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MusicDb.close(saver);
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public List<?> openDatabase() throws Throwable {
+        Object manager = MusicDb.newManager(databasePath, false);
+        try {
+            return MusicDb.openDatabase(manager);
+        } finally {
+            MusicDb.close(manager);
+        }
+    }
+
+    @Benchmark
+    public void saveDatabase() throws Throwable {
+        MusicDb.saveDatabase(saver, records);
+    }
+}
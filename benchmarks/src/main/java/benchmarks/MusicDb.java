@@ -0,0 +1,253 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Calls into the database classes, which live in the unnamed package and so cannot be imported here
+ * (JMH refuses benchmarks in the unnamed package). The handles are constants invoked with exact types,
+ * so the JIT inlines them like direct calls and they add no allocation to the gc profiler's numbers.
+ * <p>
+ * Each handle is resolved on first use in its own holder class, so the suite also runs against older
+ * versions of the database: a call to a method the version lacks throws {@link UnsupportedOperationException},
+ * which fails only the benchmarks using it, and JMH moves on to the next one.
+ */
+final class MusicDb {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> MANAGER = load("MusicDatabaseManager");
+    private static final Class<?> RECORD = load("MusicRecord");
+
+    private static final class NewManager {
+        static final MethodHandle JOURNALED = constructor(MANAGER, String.class, boolean.class);
+        static final MethodHandle PLAIN = constructor(MANAGER, String.class);
+    }
+
+    private static final class NewRecord {
+        static final MethodHandle HANDLE = constructor(RECORD,
+                int.class, String.class, String.class, String.class, String.class, int.class);
+    }
+
+    private static final class CreateDatabase {
+        static final MethodHandle HANDLE = virtual(MANAGER, "createDatabase", MethodType.methodType(void.class));
+    }
+
+    private static final class OpenDatabase {
+        static final MethodHandle HANDLE = virtual(MANAGER, "openDatabase", MethodType.methodType(List.class));
+    }
+
+    private static final class SaveDatabase {
+        static final MethodHandle HANDLE = virtual(MANAGER, "saveDatabase", MethodType.methodType(void.class, List.class));
+    }
+
+    private static final class AddRecord {
+        static final MethodHandle HANDLE = virtual(MANAGER, "addRecord", MethodType.methodType(void.class, RECORD),
+                MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    private static final class DeleteRecordByKey {
+        static final MethodHandle HANDLE = virtual(MANAGER, "deleteRecordByKey", MethodType.methodType(void.class, int.class));
+    }
+
+    private static final class DeleteRecordByField {
+        static final MethodHandle HANDLE = virtual(MANAGER, "deleteRecordByField",
+                MethodType.methodType(void.class, String.class, String.class));
+    }
+
+    private static final class SearchByField {
+        static final MethodHandle HANDLE = virtual(MANAGER, "searchByField",
+                MethodType.methodType(List.class, String.class, String.class));
+    }
+
+    private static final class GetRecord {
+        static final MethodHandle HANDLE = virtual(MANAGER, "getRecord", MethodType.methodType(RECORD, int.class),
+                MethodType.methodType(Object.class, Object.class, int.class));
+    }
+
+    private static final class UpdateRecord {
+        static final MethodHandle HANDLE = virtual(MANAGER, "updateRecord",
+                MethodType.methodType(void.class, int.class, String.class, String.class));
+    }
+
+    private static final class Close {
+        static final MethodHandle HANDLE = virtual(MANAGER, "close", MethodType.methodType(void.class));
+    }
+
+    private static final class RecordFields {
+        static final MethodHandle ID = virtual(RECORD, "getId", MethodType.methodType(int.class));
+        static final MethodHandle TITLE = virtual(RECORD, "getTitle", MethodType.methodType(String.class));
+        static final MethodHandle ARTIST = virtual(RECORD, "getArtist", MethodType.methodType(String.class));
+        static final MethodHandle ALBUM = virtual(RECORD, "getAlbum", MethodType.methodType(String.class));
+        static final MethodHandle GENRE = virtual(RECORD, "getGenre", MethodType.methodType(String.class));
+        static final MethodHandle DURATION = virtual(RECORD, "getDuration", MethodType.methodType(int.class));
+    }
+
+    private static final class Tokenize {
+        static final MethodHandle HANDLE = staticMethod(load("TokenIndex"), "tokenize", MethodType.methodType(List.class, String.class));
+    }
+
+    private MusicDb() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A constructor returning {@code Object}, or {@code null} if this version does not have it.
+     */
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        if (owner == null) {
+            return null;
+        }
+        MethodType type = MethodType.methodType(void.class, parameters);
+        try {
+            return LOOKUP.findConstructor(owner, type).asType(type.changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, MethodType type) {
+        return virtual(owner, name, type, type.insertParameterTypes(0, Object.class));
+    }
+
+    /**
+     * An instance method invoked as {@code exactType}, or {@code null} if this version does not have it.
+     */
+    private static MethodHandle virtual(Class<?> owner, String name, MethodType type, MethodType exactType) {
+        if (owner == null) {
+            return null;
+        }
+        try {
+            return LOOKUP.findVirtual(owner, name, type).asType(exactType);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, MethodType type) {
+        if (owner == null) {
+            return null;
+        }
+        try {
+            return LOOKUP.findStatic(owner, name, type);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fails the calling benchmark if the handle could not be resolved; the JIT folds the check away.
+     */
+    private static MethodHandle require(MethodHandle handle, String method) {
+        if (handle == null) {
+            throw missing(method);
+        }
+        return handle;
+    }
+
+    private static UnsupportedOperationException missing(String method) {
+        return new UnsupportedOperationException(method + " is not available in this version of the database!");
+    }
+
+    /**
+     * Versions without the journal only have the one-argument constructor; a non-journaled manager is
+     * created with that instead.
+     */
+    static Object newManager(String path, boolean journaled) throws Throwable {
+        if (NewManager.JOURNALED != null) {
+            return (Object) NewManager.JOURNALED.invokeExact(path, journaled);
+        }
+        if (journaled) {
+            throw missing("MusicDatabaseManager(String, boolean)");
+        }
+        return (Object) require(NewManager.PLAIN, "MusicDatabaseManager(String)").invokeExact(path);
+    }
+
+    static Object newRecord(int id, String title, String artist, String album, String genre, int duration) throws Throwable {
+        return (Object) require(NewRecord.HANDLE, "MusicRecord(...)").invokeExact(id, title, artist, album, genre, duration);
+    }
+
+    static void createDatabase(Object manager) throws Throwable {
+        require(CreateDatabase.HANDLE, "createDatabase").invokeExact(manager);
+    }
+
+    static List<?> openDatabase(Object manager) throws Throwable {
+        return (List<?>) require(OpenDatabase.HANDLE, "openDatabase").invokeExact(manager);
+    }
+
+    static void saveDatabase(Object manager, List<Object> records) throws Throwable {
+        require(SaveDatabase.HANDLE, "saveDatabase").invokeExact(manager, (List<?>) records);
+    }
+
+    static void addRecord(Object manager, Object record) throws Throwable {
+        require(AddRecord.HANDLE, "addRecord").invokeExact(manager, record);
+    }
+
+    static void deleteRecordByKey(Object manager, int id) throws Throwable {
+        require(DeleteRecordByKey.HANDLE, "deleteRecordByKey").invokeExact(manager, id);
+    }
+
+    static void deleteRecordByField(Object manager, String fieldName, String value) throws Throwable {
+        require(DeleteRecordByField.HANDLE, "deleteRecordByField").invokeExact(manager, fieldName, value);
+    }
+
+    static List<?> searchByField(Object manager, String fieldName, String value) throws Throwable {
+        return (List<?>) require(SearchByField.HANDLE, "searchByField").invokeExact(manager, fieldName, value);
+    }
+
+    static Object getRecord(Object manager, int id) throws Throwable {
+        return (Object) require(GetRecord.HANDLE, "getRecord").invokeExact(manager, id);
+    }
+
+    static void updateRecord(Object manager, int id, String fieldName, String value) throws Throwable {
+        require(UpdateRecord.HANDLE, "updateRecord").invokeExact(manager, id, fieldName, value);
+    }
+
+    /**
+     * Versions that are not {@code Closeable} hold nothing to release, so this does nothing for them.
+     */
+    static void close(Object manager) throws Throwable {
+        if (Close.HANDLE != null) {
+            Close.HANDLE.invokeExact(manager);
+        }
+    }
+
+    static int id(Object record) throws Throwable {
+        return (int) require(RecordFields.ID, "getId").invokeExact(record);
+    }
+
+    static String title(Object record) throws Throwable {
+        return (String) require(RecordFields.TITLE, "getTitle").invokeExact(record);
+    }
+
+    static String artist(Object record) throws Throwable {
+        return (String) require(RecordFields.ARTIST, "getArtist").invokeExact(record);
+    }
+
+    static String album(Object record) throws Throwable {
+        return (String) require(RecordFields.ALBUM, "getAlbum").invokeExact(record);
+    }
+
+    static String genre(Object record) throws Throwable {
+        return (String) require(RecordFields.GENRE, "getGenre").invokeExact(record);
+    }
+
+    static int duration(Object record) throws Throwable {
+        return (int) require(RecordFields.DURATION, "getDuration").invokeExact(record);
+    }
+
+    /**
+     * The words the text index stores for {@code text}, see {@code TokenIndex.tokenize}.
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> tokenize(String text) throws Throwable {
+        return (List<String>) require(Tokenize.HANDLE, "TokenIndex.tokenize").invokeExact(text);
+    }
+}
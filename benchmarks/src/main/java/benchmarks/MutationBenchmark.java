@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-record mutations, with and without the journal. Every measured batch starts from the same
+ * freshly loaded database, so deletes never run out of records and adds never grow it unboundedly.
+ * Scores are the time for a whole batch of {@value #BATCH} calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = MutationBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = MutationBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class MutationBenchmark {
+    static final int BATCH = 20;
+
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean journaled;
+
+    private Path directory;
+    private Path pristine;
+    private Path databasePath;
+    private Object manager;
+    private SplittableRandom random;
+    private int nextAddId;
+    private int nextDeleteId;
+    private int nextArtist;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("music-db-bench");
+        pristine = directory.resolve("pristine.json");
+        databasePath = directory.resolve("music.json");
+        Object writer = MusicDb.newManager(pristine.toString(), false);
+        MusicDb.createDatabase(writer);
+        MusicDb.saveDatabase(writer, RecordGenerator.generate(size));
+        MusicDb.close(writer);
+    }
+
+    @Setup(Level.Iteration)
+    public void reload() throws Throwable {
+        if (manager != null) {
+            MusicDb.close(manager);
+        }
+        Files.copy(pristine, databasePath, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Path.of(databasePath + ".log"));
+        Files.deleteIfExists(Path.of(databasePath + ".log.1"));
+        manager = MusicDb.newManager(databasePath.toString(), journaled);
+        MusicDb.openDatabase(manager);
+        random = new SplittableRandom(size);
+        nextAddId = size;
+        nextDeleteId = 0;
+        nextArtist = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MusicDb.close(manager);
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void addRecord() throws Throwable {
+        MusicDb.addRecord(manager, RecordGenerator.next(random, nextAddId++, size));
+    }
+
+    @Benchmark
+    public void deleteRecordByKey() throws Throwable {
+        MusicDb.deleteRecordByKey(manager, nextDeleteId++);
+    }
+
+    /**
+     * Deletes every track of the next most popular artist (the generator's artists 0, 1, 2, ...).
+     */
+    @Benchmark
+    public void deleteRecordByField() throws Throwable {
+        MusicDb.deleteRecordByField(manager, "artist", RecordGenerator.artist(nextArtist++));
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from an already loaded manager: a single record by id, which should not depend on the database size,
+ * and {@code openDatabase}, which copies every record. Both run against a journaled database, so any check of
+ * the files for external changes is part of the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ReadBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private Path directory;
+    private Object manager;
+    private int[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("music-db-bench");
+        manager = MusicDb.newManager(directory.resolve("music.json").toString(), true);
+        MusicDb.createDatabase(manager);
+        MusicDb.saveDatabase(manager, RecordGenerator.generate(size));
+        MusicDb.openDatabase(manager);
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new int[1024];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(size);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MusicDb.close(manager);
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Object getRecord() throws Throwable {
+        int id = ids[next];
+        next = (next + 1) & (ids.length - 1);
+        return MusicDb.getRecord(manager, id);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<?> openDatabase() throws Throwable {
+        return MusicDb.openDatabase(manager);
+    }
+}
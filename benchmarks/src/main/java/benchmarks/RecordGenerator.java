@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic catalogue with roughly the shape of a real one: a dozen genres, a few thousand
+ * artists with a long-tailed popularity, about eight albums per artist and one title per track.
+ */
+final class RecordGenerator {
+    static final String[] GENRES = {
+            "Rock", "Pop", "Jazz", "Classical", "Hip-Hop", "Electronic",
+            "Country", "Blues", "Metal", "Folk", "Reggae", "Soundtrack"
+    };
+    private static final String[] WORDS = {
+            "Love", "Night", "Blue", "Road", "Fire", "Heart", "Dream", "River", "Light", "Song",
+            "Summer", "Rain", "Home", "Time", "Moon", "City", "Wild", "Gold", "Shadow", "Dance"
+    };
+    private static final long SEED = 42;
+
+    private RecordGenerator() {
+    }
+
+    /**
+     * 200 artists for 10K records, 1,000 for 100K and 5,000 for 1M.
+     */
+    static int artistCount(int size) {
+        return Math.max(200, Math.min(5_000, size / 100));
+    }
+
+    static String artist(int index) {
+        return "Artist " + index;
+    }
+
+    /**
+     * Records with ids {@code 0 .. size - 1}.
+     */
+    static List<Object> generate(int size) throws Throwable {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Object> records = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            records.add(next(random, id, size));
+        }
+        return records;
+    }
+
+    static Object next(SplittableRandom random, int id, int size) throws Throwable {
+        int artists = artistCount(size);
+        int artist = (int) (artists * Math.pow(random.nextDouble(), 1.5));
+        String genre = GENRES[(int) (GENRES.length * Math.pow(random.nextDouble(), 2))];
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+        String album = "Album " + artist + "-" + random.nextInt(8);
+        int duration = (int) Math.max(60, Math.min(900, 220 + 60 * random.nextGaussian()));
+        return MusicDb.newRecord(id, title, artist(artist), album, genre, duration);
+    }
+}
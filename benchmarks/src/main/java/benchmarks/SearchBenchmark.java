@@ -0,0 +1,69 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Exact-match lookups on a unique key (id), a mid-cardinality field (artist) and a low-cardinality
+ * field whose results are a large share of the database (genre).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SearchBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    @Param({"id", "artist", "genre"})
+    String field;
+
+    private Path directory;
+    private Object manager;
+    private String[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        directory = Files.createTempDirectory("music-db-bench");
+        manager = MusicDb.newManager(directory.resolve("music.json").toString(), false);
+        MusicDb.createDatabase(manager);
+        MusicDb.saveDatabase(manager, RecordGenerator.generate(size));
+        values = switch (field) {
+            case "id" -> sample(size, Integer::toString);
+            case "artist" -> sample(RecordGenerator.artistCount(size), RecordGenerator::artist);
+            default -> RecordGenerator.GENRES;
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        MusicDb.close(manager);
+        Benchmarks.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public List<?> searchByField() throws Throwable {
+        String value = values[next];
+        next = next + 1 == values.length ? 0 : next + 1;
+        return MusicDb.searchByField(manager, field, value);
+    }
+
+    /**
+     * Up to 1,024 values spread evenly over {@code 0 .. bound - 1}, so lookups do not all hit the same key.
+     */
+    private static String[] sample(int bound, IntFunction<String> value) {
+        String[] sample = new String[Math.min(bound, 1024)];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = value.apply((int) ((long) i * bound / sample.length));
+        }
+        return sample;
+    }
+}
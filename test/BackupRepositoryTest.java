@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackupRepositoryTest {
+    @TempDir
+    Path directory;
+
+    private MusicDatabaseManager manager;
+    private Path backups;
+
+    @BeforeEach
+    void createDatabase() throws IOException {
+        manager = new MusicDatabaseManager(directory.resolve("music.json").toString());
+        manager.createDatabase();
+        manager.addRecord(new MusicRecord(1, "Мой рок-н-ролл", "Би-2", "Мяу кисс ми", "Rock", 250));
+        manager.addRecord(new MusicRecord(2, "Мои друзья", "Аквариум", "Радио Африка", "Rock", 200));
+        backups = directory.resolve("backups");
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        manager.close();
+    }
+
+    @Test
+    void restoredBaseKeepsRecordsAndIndexes() throws IOException {
+        manager.backupIncremental(backups.toString());
+        manager.addRecord(new MusicRecord(3, "Ёлка", "Йошкар-Ола бэнд", "Зима", "Pop", 180));
+        manager.backupIncremental(backups.toString());
+        manager.clearDatabase();
+
+        manager.restoreBackup(backups.toString(), null);
+        assertEquals(3, manager.getRecordCount());
+        assertEquals(2, manager.searchByField("artist", "Аквариум").get(0).getId());
+        assertEquals(1, manager.searchText("мой", 10).get(0).getId());
+        assertEquals(3, manager.searchText("йошкар", 10).get(0).getId());
+    }
+
+    @Test
+    void baseWithoutHeaderIsIndexedAnew() throws IOException {
+        BackupRepository repository = new BackupRepository(backups);
+        List<MusicRecord> records = manager.openDatabase();
+        String base = repository.store(out -> {
+            BackupRepository.writeRecords(out, records);
+            // Whatever indexes an old base stored after its records are not read.
+            out.writeInt(-1);
+        });
+        repository.addManifest(Instant.now(), records.size(), base, List.of(), 0);
+        manager.clearDatabase();
+
+        manager.restoreBackup(backups.toString(), null);
+        assertEquals(2, manager.getRecordCount());
+        assertEquals(2, manager.searchByField("album", "Радио Африка").get(0).getId());
+        assertEquals(1, manager.searchText("мой", 10).get(0).getId());
+        assertEquals(List.of(1, 2), manager.searchByDurationRange(0, 300).stream().map(MusicRecord::getId).sorted().toList());
+    }
+
+    @Test
+    void damagedObjectIsRejectedAndNothingIsRestored() throws IOException {
+        BackupManifest manifest = manager.backupIncremental(backups.toString());
+        Path object = backups.resolve("objects").resolve(manifest.getBase());
+        try (RandomAccessFile file = new RandomAccessFile(object.toFile(), "rw")) {
+            file.seek(file.length() - 6);
+            file.write(file.read() ^ 0xff);
+        }
+
+        IOException error = assertThrows(IOException.class, () -> manager.restoreBackup(backups.toString(), null));
+        assertTrue(error.getMessage().contains("corrupted"), error.getMessage());
+        assertEquals(0, manager.getRecordCount());
+        assertTrue(Files.exists(object));
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writtenRecordsReadBack() throws IOException {
+        Path file = write();
+        BinarySnapshot snapshot = BinarySnapshot.open(file);
+        assertEquals(3, snapshot.size());
+        assertEquals("Группа крови", snapshot.get(0).getTitle());
+        assertNull(snapshot.get(1).getTitle());
+        assertNull(snapshot.get(1).getAlbum());
+        assertSame(snapshot.get(0).getArtist(), snapshot.get(2).getArtist());
+        assertEquals(299, snapshot.get(2).getDuration());
+    }
+
+    @Test
+    void fileCanBeReplacedWhileSnapshotIsInUse() throws IOException {
+        Path file = write();
+        BinarySnapshot snapshot = BinarySnapshot.open(file);
+        Files.delete(file);
+        assertEquals(3, snapshot.get(2).getId());
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        Path file = write();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = 1; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> BinarySnapshot.open(file), "length " + length);
+        }
+    }
+
+    @Test
+    void corruptCountsAndReferencesAreRejected() throws IOException {
+        Path file = write();
+        byte[] bytes = Files.readAllBytes(file);
+
+        assertThrows(IOException.class, () -> BinarySnapshot.open(withInt(file, bytes, 8, Integer.MAX_VALUE)));
+        assertThrows(IOException.class, () -> BinarySnapshot.open(withInt(file, bytes, 8, -1)));
+        int artistOfFirstRecord = BinarySnapshotFormat.HEADER_BYTES + BinarySnapshotFormat.ARTIST_COLUMN * 3 * Integer.BYTES;
+        assertThrows(IOException.class, () -> BinarySnapshot.open(withInt(file, bytes, artistOfFirstRecord, 1000)));
+        int poolSize = BinarySnapshotFormat.HEADER_BYTES + BinarySnapshotFormat.COLUMN_COUNT * 3 * Integer.BYTES;
+        assertThrows(IOException.class, () -> BinarySnapshot.open(withInt(file, bytes, poolSize, 1 << 28)));
+        assertThrows(IOException.class, () -> BinarySnapshot.open(withInt(file, bytes, poolSize + 2 * Integer.BYTES, -5)));
+    }
+
+    private Path write() throws IOException {
+        Path file = directory.resolve("music.mdb");
+        new BinarySnapshotFormat().write(file, List.of(
+                new MusicRecord(1, "Группа крови", "Кино", "Группа крови", "Rock", 287),
+                new MusicRecord(2, null, "Король и Шут", null, "Punk", 203),
+                new MusicRecord(3, "Кукушка", "Кино", "Чёрный альбом", "Rock", 299)));
+        return file;
+    }
+
+    private static Path withInt(Path file, byte[] bytes, int position, int value) throws IOException {
+        byte[] changed = bytes.clone();
+        ByteBuffer.wrap(changed).putInt(position, value);
+        Files.write(file, changed);
+        return file;
+    }
+}
@@ -0,0 +1,163 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntPostingsTest {
+    private static final int BLOCK = IntPostings.BLOCK_SIZE;
+
+    @Test
+    void idsAddedInOrderFillWholeBlocks() {
+        IntPostings postings = new IntPostings();
+        for (int id = 0; id < 3 * BLOCK; id++) {
+            assertTrue(postings.add(id));
+        }
+        assertEquals(3, postings.blockCount());
+        assertContents(range(0, 3 * BLOCK), postings);
+    }
+
+    @Test
+    void insertIntoFullBlockSplitsIt() {
+        IntPostings postings = new IntPostings();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < BLOCK; i++) {
+            postings.add(i * 2);
+            expected.add(i * 2);
+        }
+        assertEquals(1, postings.blockCount());
+
+        postings.add(1);
+        expected.add(1);
+        assertEquals(2, postings.blockCount());
+        assertContents(expected, postings);
+
+        postings.add(BLOCK + 1);
+        expected.add(BLOCK + 1);
+        assertEquals(2, postings.blockCount());
+        assertContents(expected, postings);
+    }
+
+    @Test
+    void duplicatesAndMissingIdsAreReported() {
+        IntPostings postings = new IntPostings();
+        for (int id = 0; id < 2 * BLOCK; id++) {
+            postings.add(id);
+        }
+        assertFalse(postings.add(5));
+        assertFalse(postings.add(BLOCK + 5));
+        assertFalse(postings.remove(-1));
+        assertFalse(postings.remove(2 * BLOCK));
+        assertEquals(2 * BLOCK, postings.size());
+    }
+
+    @Test
+    void shrinkingBlocksMergeBackIntoOneArray() {
+        IntPostings postings = new IntPostings();
+        for (int id = 0; id < 4 * BLOCK; id++) {
+            postings.add(id);
+        }
+        assertEquals(4, postings.blockCount());
+
+        TreeSet<Integer> expected = range(0, 4 * BLOCK);
+        for (int id = 0; id < 4 * BLOCK; id++) {
+            if (id % 8 != 0) {
+                postings.remove(id);
+                expected.remove(id);
+            }
+        }
+        // Each block shrinks to 128 ids and merges with its neighbour, so all 512 fit in one array again.
+        assertEquals(1, postings.blockCount());
+        assertContents(expected, postings);
+
+        for (int id = 4 * BLOCK; id < 5 * BLOCK; id++) {
+            postings.add(id);
+            expected.add(id);
+        }
+        assertEquals(2, postings.blockCount());
+        assertContents(expected, postings);
+    }
+
+    @Test
+    void emptiedBlockIsDropped() {
+        IntPostings postings = new IntPostings();
+        for (int id = 0; id < 3 * BLOCK; id++) {
+            postings.add(id);
+        }
+        TreeSet<Integer> expected = range(0, 3 * BLOCK);
+        for (int id = BLOCK; id < 2 * BLOCK; id++) {
+            postings.remove(id);
+            expected.remove(id);
+        }
+        assertEquals(2, postings.blockCount());
+        assertContents(expected, postings);
+    }
+
+    @Test
+    void writtenPostingsReadBackInBlocks() throws IOException {
+        IntPostings postings = new IntPostings();
+        for (int id = 0; id < 5 * BLOCK / 2; id++) {
+            postings.add(id * 3);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        postings.writeTo(new DataOutputStream(bytes));
+        IntPostings read = IntPostings.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(3, read.blockCount());
+        assertArrayEquals(postings.toArray(), read.toArray());
+        assertTrue(read.add(1));
+        assertTrue(read.contains(1));
+        assertEquals(postings.size() + 1, read.size());
+    }
+
+    @Test
+    void randomChangesMatchTreeSet() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            IntPostings postings = new IntPostings();
+            TreeSet<Integer> expected = new TreeSet<>();
+            int range = round % 2 == 0 ? 5_000 : 100_000;
+            for (int i = 0; i < 20_000; i++) {
+                int id = random.nextInt(range);
+                boolean add = i < 10_000 ? random.nextInt(10) < 8 : random.nextInt(10) < 3;
+                if (add) {
+                    assertEquals(expected.add(id), postings.add(id));
+                } else {
+                    assertEquals(expected.remove(id), postings.remove(id));
+                }
+            }
+            assertContents(expected, postings);
+            for (int i = 0; i < 1_000; i++) {
+                int id = random.nextInt(range);
+                assertEquals(expected.contains(id), postings.contains(id));
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            postings.writeTo(new DataOutputStream(bytes));
+            assertContents(expected, IntPostings.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    private static TreeSet<Integer> range(int from, int to) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        for (int id = from; id < to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static void assertContents(TreeSet<Integer> expected, IntPostings postings) {
+        int[] ids = expected.stream().mapToInt(Integer::intValue).toArray();
+        assertEquals(ids.length, postings.size());
+        assertArrayEquals(ids, postings.toArray());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], postings.get(i));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MusicDatabaseJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysFramesInOrder() throws IOException {
+        Path log = directory.resolve("music.json.log");
+        MusicDatabaseJournal journal = new MusicDatabaseJournal(log);
+        journal.append(List.of(put(1, "Kino"), put(2, "Аквариум")));
+        journal.append(List.of(MusicDatabaseJournal.Entry.delete(1)));
+        journal.close();
+
+        List<MusicDatabaseJournal.Entry> entries = replay(new MusicDatabaseJournal(log));
+        assertEquals(3, entries.size());
+        assertEquals(MusicDatabaseJournal.Op.PUT, entries.get(0).getOp());
+        assertEquals("Аквариум", entries.get(1).getRecord().getArtist());
+        assertEquals(MusicDatabaseJournal.Op.DELETE, entries.get(2).getOp());
+        assertEquals(1, entries.get(2).getId());
+    }
+
+    @Test
+    void tornTailIsCutOffAndLaterFramesStayReadable() throws IOException {
+        Path log = directory.resolve("music.json.log");
+        MusicDatabaseJournal journal = new MusicDatabaseJournal(log);
+        journal.append(List.of(put(1, "Kino")));
+        journal.close();
+        long firstFrame = Files.size(log);
+        journal.append(List.of(put(2, "DDT")));
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        MusicDatabaseJournal reopened = new MusicDatabaseJournal(log);
+        List<MusicDatabaseJournal.Entry> entries = replay(reopened);
+        assertEquals(1, entries.size());
+        assertEquals(1, entries.get(0).getId());
+        assertEquals(firstFrame, Files.size(log));
+
+        reopened.append(List.of(put(3, "Zemfira")));
+        reopened.close();
+        entries = replay(new MusicDatabaseJournal(log));
+        assertEquals(2, entries.size());
+        assertEquals(3, entries.get(1).getId());
+    }
+
+    @Test
+    void tornHeaderWithGarbageLengthIsCutOff() throws IOException {
+        Path log = directory.resolve("music.json.log");
+        MusicDatabaseJournal journal = new MusicDatabaseJournal(log);
+        journal.append(List.of(put(1, "Kino")));
+        journal.close();
+        long firstFrame = Files.size(log);
+        // A complete header whose length claims almost 2 GB; it must not be allocated.
+        Files.write(log, new byte[]{0x7f, 0x00, 0x00, 0x00, 0x12, 0x34, 0x56, 0x78}, StandardOpenOption.APPEND);
+
+        assertEquals(1, replay(new MusicDatabaseJournal(log)).size());
+        assertEquals(firstFrame, Files.size(log));
+    }
+
+    @Test
+    void frameWithBadChecksumEndsReplay() throws IOException {
+        Path log = directory.resolve("music.json.log");
+        MusicDatabaseJournal journal = new MusicDatabaseJournal(log);
+        journal.append(List.of(put(1, "Kino")));
+        journal.close();
+        long firstFrame = Files.size(log);
+        journal.append(List.of(put(2, "DDT")));
+        journal.append(List.of(put(3, "Zemfira")));
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(firstFrame + 12);
+            file.write(file.read() ^ 0xff);
+        }
+
+        List<MusicDatabaseJournal.Entry> entries = replay(new MusicDatabaseJournal(log));
+        assertEquals(1, entries.size());
+        assertEquals(firstFrame, Files.size(log));
+    }
+
+    @Test
+    void rotatedLogIsReplayedBeforeActiveLog() throws IOException {
+        Path log = directory.resolve("music.json.log");
+        MusicDatabaseJournal journal = new MusicDatabaseJournal(log);
+        journal.append(List.of(put(1, "Kino")));
+        journal.rotate();
+        journal.append(List.of(MusicDatabaseJournal.Entry.delete(1), put(2, "DDT")));
+        journal.close();
+        assertTrue(journal.hasRotated());
+
+        List<MusicDatabaseJournal.Entry> entries = replay(new MusicDatabaseJournal(log));
+        assertEquals(3, entries.size());
+        assertEquals(MusicDatabaseJournal.Op.PUT, entries.get(0).getOp());
+        assertEquals(MusicDatabaseJournal.Op.DELETE, entries.get(1).getOp());
+        assertEquals(2, entries.get(2).getId());
+    }
+
+    @Test
+    void managerRecoversJournaledChangesAfterTornTail() throws IOException {
+        String path = directory.resolve("music.json").toString();
+        MusicDatabaseManager manager = new MusicDatabaseManager(path, true);
+        manager.createDatabase();
+        manager.addRecord(new MusicRecord(1, "Группа крови", "Кино", "Группа крови", "Rock", 287));
+        manager.addRecord(new MusicRecord(2, "Звезда по имени Солнце", "Кино", "Звезда по имени Солнце", "Rock", 225));
+        manager.updateRecord(1, "title", "Группа крови (live)");
+        manager.deleteRecordByKey(2);
+        manager.addRecord(new MusicRecord(3, "Что такое осень", "ДДТ", "Актриса весна", "Rock", 299));
+        manager.close();
+        // A crash during the last append leaves only part of its frame behind.
+        Path log = Path.of(path + ".log");
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        MusicDatabaseManager reopened = new MusicDatabaseManager(path, true);
+        List<MusicRecord> records = reopened.openDatabase();
+        assertEquals(1, records.size());
+        assertEquals("Группа крови (live)", reopened.getRecord(1).getTitle());
+        assertNull(reopened.getRecord(2));
+        assertNull(reopened.getRecord(3));
+        assertEquals(1, reopened.searchByField("artist", "Кино").size());
+
+        reopened.addRecord(new MusicRecord(3, "Что такое осень", "ДДТ", "Актриса весна", "Rock", 299));
+        reopened.close();
+        MusicDatabaseManager again = new MusicDatabaseManager(path, true);
+        assertEquals(2, again.openDatabase().size());
+        assertEquals("ДДТ", again.getRecord(3).getArtist());
+        again.close();
+    }
+
+    @Test
+    void ownCompactionIsNotMistakenForExternalChange() throws Exception {
+        String path = directory.resolve("music.json").toString();
+        MusicDatabaseManager manager = new MusicDatabaseManager(path, true);
+        manager.createDatabase();
+        manager.getMetrics().setEnabled(true);
+        long rebuilds = manager.getMetrics().getIndexRebuilds();
+        String padding = "x".repeat(200);
+        // Enough journal for the 8 MB compaction threshold; reads keep checking the files while it runs.
+        for (int batch = 0; batch < 5 && manager.getMetrics().getCompactions() == 0; batch++) {
+            List<MusicRecord> records = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                int id = batch * 10_000 + i;
+                records.add(new MusicRecord(id, "Title " + id + padding, "Artist " + id % 100, "Album", "Rock", 200));
+            }
+            manager.addRecords(records);
+        }
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (manager.getMetrics().getCompactions() == 0 && System.nanoTime() < deadline) {
+            assertEquals(50_000, manager.openDatabase().size());
+        }
+        assertEquals(1, manager.getMetrics().getCompactions());
+        assertEquals(50_000, manager.openDatabase().size());
+        assertEquals(rebuilds, manager.getMetrics().getIndexRebuilds());
+        manager.close();
+
+        MusicDatabaseManager reopened = new MusicDatabaseManager(path, true);
+        assertEquals(50_000, reopened.openDatabase().size());
+        reopened.close();
+    }
+
+    private static MusicDatabaseJournal.Entry put(int id, String artist) {
+        return MusicDatabaseJournal.Entry.put(new MusicRecord(id, "Title " + id, artist, "Album", "Rock", 200));
+    }
+
+    private static List<MusicDatabaseJournal.Entry> replay(MusicDatabaseJournal journal) throws IOException {
+        List<MusicDatabaseJournal.Entry> entries = new ArrayList<>();
+        journal.replay(entries::add);
+        return entries;
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MusicDatabaseManagerTest {
+    @TempDir
+    Path directory;
+
+    private MusicDatabaseManager manager;
+
+    @BeforeEach
+    void createDatabase() throws IOException {
+        manager = new MusicDatabaseManager(directory.resolve("music.json").toString());
+        manager.createDatabase();
+        manager.addRecord(new MusicRecord(1, "Группа крови", "Кино", "Группа крови", "Rock", 287));
+        manager.addRecord(new MusicRecord(2, "Кукла колдуна", "Король и Шут", "Акустический альбом", "Punk", 203));
+        manager.addRecord(new MusicRecord(3, "Что такое осень", "ДДТ", "Актриса весна", "Rock", 299));
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        manager.close();
+    }
+
+    @Test
+    void rangeSearchesIncludeBothBounds() {
+        assertEquals(List.of(1, 2), ids(manager.searchByIdRange(1, 2)));
+        assertEquals(List.of(1, 3), ids(manager.searchByDurationRange(287, 299)));
+    }
+
+    @Test
+    void invertedRangeFindsNothing() {
+        assertTrue(manager.searchByIdRange(3, 1).isEmpty());
+        assertTrue(manager.searchByDurationRange(300, 120).isEmpty());
+    }
+
+    @Test
+    void queryWithInvertedRangeFindsNothing() {
+        assertTrue(manager.query(new MusicQuery().between("duration", 300, 120).eq("genre", "Rock")).isEmpty());
+        assertTrue(manager.query(new MusicQuery().eq("genre", "Rock").between("id", 3, 1)).isEmpty());
+        assertEquals(List.of(1, 3), ids(manager.query(new MusicQuery().between("duration", 250, 300).eq("genre", "Rock"))));
+    }
+
+    @Test
+    void exportedCsvAndBinaryFilesHoldTheRecordsInOrder() throws IOException {
+        Path csv = directory.resolve("export.csv");
+        Path mdb = directory.resolve("export.mdb");
+        assertEquals(3, manager.exportRecords(csv.toString(), null, (done, total) -> { }));
+        assertEquals(2, manager.exportRecords(mdb.toString(), new MusicQuery().eq("genre", "Rock"), (done, total) -> { }));
+
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals("ID,Title,Artist,Album,Genre,Duration", lines.get(0));
+        assertEquals("2,Кукла колдуна,Король и Шут,Акустический альбом,Punk,203", lines.get(2));
+        BinarySnapshot snapshot = BinarySnapshot.open(mdb);
+        assertEquals(2, snapshot.size());
+        assertEquals("Что такое осень", snapshot.get(1).getTitle());
+        assertSame(snapshot.get(0).getGenre(), snapshot.get(1).getGenre());
+    }
+
+    private static List<Integer> ids(List<MusicRecord> records) {
+        return records.stream().map(MusicRecord::getId).toList();
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void latinDiacriticsAreStripped() {
+        assertEquals(List.of("beyonce", "deja", "vu"), TokenIndex.tokenize("Beyoncé – Déjà Vu"));
+        assertEquals(List.of("motorhead"), TokenIndex.tokenize("Motörhead"));
+    }
+
+    @Test
+    void cyrillicShortIKeepsItsBreve() {
+        assertEquals(List.of("мой", "мои"), TokenIndex.tokenize("Мой, МОИ"));
+        assertEquals(List.of("йошкар", "ола"), TokenIndex.tokenize("Йошкар-Ола"));
+        assertEquals(List.of("елка", "еж"), TokenIndex.tokenize("Ёлка ёж"));
+    }
+
+    @Test
+    void cyrillicWordsDifferingInShortIAreNotExactMatches() {
+        TokenIndex index = new TokenIndex();
+        index.add(1, "Мой рок-н-ролл");
+        index.add(2, "Мои друзья");
+
+        Map<String, Double> matches = index.matchingTokens("мой");
+        assertEquals(1.0, matches.get("мой").doubleValue());
+        assertTrue(matches.getOrDefault("мои", 0.0) < 1.0, "мои must not be an exact match for мой");
+    }
+
+    @Test
+    void searchRanksExactCyrillicWordFirst() throws IOException {
+        MusicDatabaseManager manager = new MusicDatabaseManager(directory.resolve("music.json").toString());
+        manager.createDatabase();
+        manager.addRecord(new MusicRecord(1, "Мои друзья", "Аквариум", "Радио Африка", "Rock", 200));
+        manager.addRecord(new MusicRecord(2, "Мой рок-н-ролл", "Би-2", "Мяу кисс ми", "Rock", 250));
+        manager.addRecord(new MusicRecord(3, "Ёлка", "Йошкар-Ола бэнд", "Зима", "Pop", 180));
+
+        List<MusicRecord> hits = manager.searchText("мой", 10);
+        assertEquals(2, hits.get(0).getId());
+        assertEquals(3, manager.searchText("йошкар", 10).get(0).getId());
+        assertEquals(3, manager.searchText("елка", 10).get(0).getId());
+        manager.close();
+    }
+}